@@ -0,0 +1,494 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Class that reads, filters, and writes many pictures with three pools
+ * of threads, one for each stage.  Decoded pictures wait in a bounded
+ * queue for a filter thread and filtered pictures wait in another for
+ * an encoder thread.  When a queue is full the stage before it waits,
+ * so only a few pictures are in memory at a time, and reading and
+ * writing files happens while other pictures are being filtered.
+ *
+ * The number of threads in each stage and the size of the queues can
+ * be set.  While it runs, getDecodedQueueSize and getFilteredQueueSize
+ * tell how many pictures are waiting, and each stage keeps how busy its
+ * threads were (see Stage).  A stage whose queue stays full is faster
+ * than the one after it, so that later stage should get more threads.
+ * Each filter thread runs the filters of its picture by itself (the
+ * pictures are filtered in parallel instead), so the filter stage uses
+ * as many processors as it has threads.
+ *
+ * A picture that fails is skipped, but if a thread of any stage dies
+ * (for example with an OutOfMemoryError) the whole batch is stopped:
+ * the other threads are interrupted so no stage waits forever on a
+ * queue nobody empties, and the error is kept in the summary.
+ */
+public class BatchPipeline
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the marker put on a queue to tell the next stage to stop */
+  private static final Job END = new Job(null);
+
+  /** the engine the filter threads use so they don't share the default pool */
+  private static final FilterEngine ONE_THREAD = new FilterEngine(1);
+
+  /** the stage that reads the files */
+  private final Stage decodeStage;
+
+  /** the stage that runs the filters */
+  private final Stage filterStage;
+
+  /** the stage that writes the files */
+  private final Stage encodeStage;
+
+  /** the decoded pictures waiting to be filtered */
+  private final BlockingQueue<Job> decoded;
+
+  /** the filtered pictures waiting to be written */
+  private final BlockingQueue<Job> filtered;
+
+  /** the most pictures that have waited in the decoded queue */
+  private final AtomicInteger decodedPeak = new AtomicInteger();
+
+  /** the most pictures that have waited in the filtered queue */
+  private final AtomicInteger filteredPeak = new AtomicInteger();
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * Constructor that takes the number of threads for each stage and
+   * the number of pictures that can wait between stages
+   * @param decodeThreads the number of threads reading files
+   * @param filterThreads the number of threads running filters
+   * @param encodeThreads the number of threads writing files
+   * @param queueCapacity the most pictures that can wait in each queue
+   */
+  public BatchPipeline(int decodeThreads, int filterThreads, int encodeThreads,
+                       int queueCapacity)
+  {
+    if (queueCapacity < 1)
+      throw new IllegalArgumentException("queueCapacity must be at least 1: " + queueCapacity);
+    this.decodeStage = new Stage("decode", decodeThreads);
+    this.filterStage = new Stage("filter", filterThreads);
+    this.encodeStage = new Stage("encode", encodeThreads);
+    this.decoded = new ArrayBlockingQueue<Job>(queueCapacity);
+    this.filtered = new ArrayBlockingQueue<Job>(queueCapacity);
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to get the stage that reads the files
+   * @return the decode stage
+   */
+  public Stage getDecodeStage() { return decodeStage; }
+
+  /**
+   * Method to get the stage that runs the filters
+   * @return the filter stage
+   */
+  public Stage getFilterStage() { return filterStage; }
+
+  /**
+   * Method to get the stage that writes the files
+   * @return the encode stage
+   */
+  public Stage getEncodeStage() { return encodeStage; }
+
+  /**
+   * Method to get the number of decoded pictures waiting to be filtered
+   * @return the current size of the decoded queue
+   */
+  public int getDecodedQueueSize() { return decoded.size(); }
+
+  /**
+   * Method to get the number of filtered pictures waiting to be written
+   * @return the current size of the filtered queue
+   */
+  public int getFilteredQueueSize() { return filtered.size(); }
+
+  /**
+   * Method to get the most decoded pictures that have waited to be
+   * filtered at one time
+   * @return the peak size of the decoded queue
+   */
+  public int getDecodedQueuePeak() { return decodedPeak.get(); }
+
+  /**
+   * Method to get the most filtered pictures that have waited to be
+   * written at one time
+   * @return the peak size of the filtered queue
+   */
+  public int getFilteredQueuePeak() { return filteredPeak.get(); }
+
+  /**
+   * Method to read, filter, and write a list of files and wait until
+   * they are all done.  A file that can't be read, filtered, or written
+   * is reported and skipped.  If a thread dies the rest are stopped and
+   * the error is in the summary (see Summary.getError).
+   * @param inputs the files to read
+   * @param chain the filters to run on each picture
+   * @param outputFor gives the file to write the result of an input to
+   * @return a summary of what was done
+   */
+  public BatchProcessor.Summary run(List<File> inputs, UnaryOperator<Picture> chain,
+                                    Function<File, File> outputFor)
+  {
+    BatchProcessor.Summary summary = new BatchProcessor.Summary();
+    AtomicInteger nextInput = new AtomicInteger();
+    AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+
+    threads.addAll(decodeStage.start(guard(() -> {
+      int index;
+      while (error.get() == null && (index = nextInput.getAndIncrement()) < inputs.size())
+      {
+        Job job = new Job(inputs.get(index));
+        long start = System.nanoTime();
+        try
+        {
+          job.picture = SimplePicture.loadPicture(job.input.getPath());
+        }
+        catch (IOException | RuntimeException ex)
+        {
+          fail(job, ex, summary);
+          continue;
+        }
+        finally
+        {
+          decodeStage.addBusyTime(System.nanoTime() - start);
+        }
+        put(decoded, decodedPeak, decodeStage, job);
+      }
+    }, decodeStage, error, threads), guard(() -> putEnds(decoded, filterStage),
+                                          decodeStage, error, threads)));
+
+    threads.addAll(filterStage.start(guard(() -> {
+      FilterEngine.setForCurrentThread(ONE_THREAD);
+      Job job;
+      while ((job = take(decoded)) != END)
+      {
+        long start = System.nanoTime();
+        try
+        {
+          job.picture = chain.apply(job.picture);
+        }
+        catch (RuntimeException ex)
+        {
+          fail(job, ex, summary);
+          continue;
+        }
+        finally
+        {
+          filterStage.addBusyTime(System.nanoTime() - start);
+        }
+        put(filtered, filteredPeak, filterStage, job);
+      }
+    }, filterStage, error, threads), guard(() -> putEnds(filtered, encodeStage),
+                                          filterStage, error, threads)));
+
+    threads.addAll(encodeStage.start(guard(() -> {
+      Job job;
+      while ((job = take(filtered)) != END)
+      {
+        long start = System.nanoTime();
+        try
+        {
+          File output = outputFor.apply(job.input);
+          job.picture.writeOrFail(output.getPath());
+          summary.addFile(job.input.length(), output.length());
+        }
+        catch (IOException | RuntimeException ex)
+        {
+          fail(job, ex, summary);
+        }
+        finally
+        {
+          encodeStage.addBusyTime(System.nanoTime() - start);
+        }
+      }
+    }, encodeStage, error, threads), null));
+
+    // a thread may have died before the later stages were started
+    if (error.get() != null)
+      interruptAll(threads);
+
+    for (Thread thread : new ArrayList<Thread>(threads))
+    {
+      try
+      {
+        thread.join();
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+        for (Thread other : threads)
+          other.interrupt();
+        break;
+      }
+    }
+    summary.finish(error.get());
+    return summary;
+  }
+
+  /**
+   * Method to wrap the work of a stage so that if it dies the error
+   * is kept and every other thread is stopped.  Once a thread has died
+   * the work of the other threads is skipped (it would only wait on
+   * queues that nobody empties).
+   * @param work the work to wrap
+   * @param stage the stage doing the work
+   * @param error where the first error is kept
+   * @param threads all the threads of the pipeline
+   * @return the wrapped work
+   */
+  private static Runnable guard(Runnable work, Stage stage, AtomicReference<Throwable> error,
+                                List<Thread> threads)
+  {
+    return () -> {
+      if (error.get() != null)
+        return;
+      try
+      {
+        work.run();
+      }
+      catch (Throwable ex)
+      {
+        if (error.compareAndSet(null, ex))
+        {
+          System.err.println("The " + stage.getName() + " stage stopped: " + ex);
+          interruptAll(threads);
+        }
+      }
+    };
+  }
+
+  /**
+   * Method to interrupt every thread in a list but the current one
+   */
+  private static void interruptAll(List<Thread> threads)
+  {
+    synchronized (threads)
+    {
+      for (Thread thread : threads)
+      {
+        if (thread != Thread.currentThread())
+          thread.interrupt();
+      }
+    }
+  }
+
+  /**
+   * Method to report a picture that couldn't be done
+   */
+  private static void fail(Job job, Exception ex, BatchProcessor.Summary summary)
+  {
+    summary.addFailure();
+    System.err.println("Couldn't process " + job.input + ": " + ex.getMessage());
+  }
+
+  /**
+   * Method to put a job on a queue, waiting while the queue is full,
+   * and keep the peak size of the queue and how long the stage waited
+   */
+  private static void put(BlockingQueue<Job> queue, AtomicInteger peak, Stage stage, Job job)
+  {
+    long start = System.nanoTime();
+    put(queue, job);
+    stage.addBlockedTime(System.nanoTime() - start);
+    peak.accumulateAndGet(queue.size(), Math::max);
+  }
+
+  /**
+   * Method to put a job on a queue, waiting while the queue is full
+   */
+  private static void put(BlockingQueue<Job> queue, Job job)
+  {
+    try
+    {
+      queue.put(job);
+    }
+    catch (InterruptedException ex)
+    {
+      throw new IllegalStateException("interrupted", ex);
+    }
+  }
+
+  /**
+   * Method to tell every thread of the next stage to stop once
+   * the queue is empty
+   */
+  private static void putEnds(BlockingQueue<Job> queue, Stage next)
+  {
+    for (int i = 0; i < next.getThreadCount(); i++)
+      put(queue, END);
+  }
+
+  /**
+   * Method to take a job from a queue, waiting while it is empty
+   */
+  private static Job take(BlockingQueue<Job> queue)
+  {
+    try
+    {
+      return queue.take();
+    }
+    catch (InterruptedException ex)
+    {
+      throw new IllegalStateException("interrupted", ex);
+    }
+  }
+
+  /**
+   * Method to return a string with how busy each stage was
+   * @return a line for each stage
+   */
+  public String toString()
+  {
+    return decodeStage + "\n" + filterStage + "\n" + encodeStage + "\n" +
+      "queues: decoded peak " + getDecodedQueuePeak() + " of " +
+      (decoded.size() + decoded.remainingCapacity()) +
+      ", filtered peak " + getFilteredQueuePeak() + " of " +
+      (filtered.size() + filtered.remainingCapacity());
+  }
+
+  /**
+   * Class that is a picture moving through the stages
+   */
+  private static class Job
+  {
+    private final File input;
+    private Picture picture;
+
+    Job(File input)
+    {
+      this.input = input;
+    }
+  }
+
+  /**
+   * Class that is one stage of the pipeline: a number of threads doing
+   * the same work.  It keeps how many pictures the stage worked on and
+   * how long its threads were busy.
+   */
+  public static class Stage
+  {
+    private final String name;
+    private final int threadCount;
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private final AtomicInteger jobs = new AtomicInteger();
+    private long startTime;
+    private long endTime;
+
+    Stage(String name, int threadCount)
+    {
+      if (threadCount < 1)
+        throw new IllegalArgumentException(name + " threads must be at least 1: " + threadCount);
+      this.name = name;
+      this.threadCount = threadCount;
+    }
+
+    /**
+     * Method to start the threads of the stage.  The last thread to
+     * finish runs whenDone.
+     */
+    List<Thread> start(Runnable work, Runnable whenDone)
+    {
+      startTime = System.nanoTime();
+      AtomicInteger running = new AtomicInteger(threadCount);
+      List<Thread> threads = new ArrayList<Thread>();
+      for (int i = 0; i < threadCount; i++)
+      {
+        Thread thread = new Thread(() -> {
+          try
+          {
+            work.run();
+          }
+          finally
+          {
+            if (running.decrementAndGet() == 0)
+            {
+              endTime = System.nanoTime();
+              if (whenDone != null)
+                whenDone.run();
+            }
+          }
+        }, name + "-" + (i + 1));
+        thread.start();
+        threads.add(thread);
+      }
+      return threads;
+    }
+
+    void addBusyTime(long nanos)
+    {
+      busyNanos.addAndGet(nanos);
+      jobs.incrementAndGet();
+    }
+
+    void addBlockedTime(long nanos)
+    {
+      blockedNanos.addAndGet(nanos);
+    }
+
+    /** @return the name of the stage */
+    public String getName() { return name; }
+
+    /** @return the number of threads in the stage */
+    public int getThreadCount() { return threadCount; }
+
+    /** @return the number of pictures the stage has worked on */
+    public int getJobCount() { return jobs.get(); }
+
+    /** @return the total time the threads spent working in seconds */
+    public double getBusySeconds() { return busyNanos.get() / 1e9; }
+
+    /**
+     * Method to get the total time the threads waited because the
+     * queue after the stage was full.  A lot of blocked time means the
+     * next stage is the slow one.
+     * @return the blocked time in seconds
+     */
+    public double getBlockedSeconds() { return blockedNanos.get() / 1e9; }
+
+    /**
+     * Method to get how much of the time the threads were working
+     * (not waiting on a queue) from when the stage started until its
+     * last thread finished (or now if it hasn't)
+     * @return the busy fraction from 0 to 1
+     */
+    public double getUtilization()
+    {
+      long end = endTime;
+      if (end == 0)
+        end = System.nanoTime();
+      double available = (end - startTime) / 1e9 * threadCount;
+      if (available <= 0)
+        return 0;
+      return getBusySeconds() / available;
+    }
+
+    public String toString()
+    {
+      return String.format(Locale.ROOT,
+                           "%-6s %2d threads %5d pictures %7.2f s busy %7.2f s blocked %3.0f%% utilized",
+                           name, threadCount, getJobCount(), getBusySeconds(),
+                           getBlockedSeconds(), 100 * getUtilization());
+    }
+  }
+
+}
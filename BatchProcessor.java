@@ -0,0 +1,386 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import javax.imageio.ImageIO;
+
+/**
+ * Class that runs a chain of filters on every picture in a directory
+ * without showing them, and writes the results to another directory.
+ * Pictures are read, filtered, and written by separate pools of threads
+ * joined by bounded queues (see BatchPipeline), so files are read and
+ * written while other pictures are filtered and only a few pictures are
+ * in memory at a time however many files there are.
+ *
+ * From the command line:
+ * <pre>
+ *   java BatchProcessor [-threads n] [-decoders n] [-encoders n] [-queue n]
+ *                       [-format ext] inputDir chain outputDir
+ *   java BatchProcessor images grayscale,blur:5,negate out
+ * </pre>
+ * See FilterPipeline.parse for how to write the chain.  When it is done
+ * it prints how many pictures it did per second, how many megabytes it
+ * read and wrote per second, and how busy each stage was.
+ */
+public class BatchProcessor
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the directory to read pictures from */
+  private final File inputDir;
+
+  /** the directory to write the results to */
+  private final File outputDir;
+
+  /** the filters to run on each picture */
+  private final UnaryOperator<Picture> chain;
+
+  /** the number of threads running filters */
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  /** the number of threads reading files */
+  private int decoders = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+  /** the number of threads writing files */
+  private int encoders = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+  /** the most pictures that can wait between two stages */
+  private int queueCapacity = 2 * Runtime.getRuntime().availableProcessors();
+
+  /** the pipeline used by the last run (or null) */
+  private BatchPipeline pipeline;
+
+  /** the extension of the output files (or null to keep the input's) */
+  private String outputFormat;
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * Constructor that takes the directories and the filter chain
+   * @param inputDir the directory to read pictures from
+   * @param chain the filter chain (see FilterPipeline.parse)
+   * @param outputDir the directory to write the results to
+   * @throws IllegalArgumentException if the chain can't be parsed
+   */
+  public BatchProcessor(File inputDir, String chain, File outputDir)
+  {
+    this.inputDir = inputDir;
+    this.chain = FilterPipeline.parse(chain);
+    this.outputDir = outputDir;
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to set the number of threads running filters
+   * @param threads the number of threads (at least 1)
+   */
+  public void setThreads(int threads)
+  {
+    if (threads < 1)
+      throw new IllegalArgumentException("threads must be at least 1: " + threads);
+    this.threads = threads;
+  }
+
+  /**
+   * Method to set the number of threads reading files
+   * @param decoders the number of threads (at least 1)
+   */
+  public void setDecoders(int decoders)
+  {
+    if (decoders < 1)
+      throw new IllegalArgumentException("decoders must be at least 1: " + decoders);
+    this.decoders = decoders;
+  }
+
+  /**
+   * Method to set the number of threads writing files
+   * @param encoders the number of threads (at least 1)
+   */
+  public void setEncoders(int encoders)
+  {
+    if (encoders < 1)
+      throw new IllegalArgumentException("encoders must be at least 1: " + encoders);
+    this.encoders = encoders;
+  }
+
+  /**
+   * Method to set the most pictures that can wait between two stages
+   * @param queueCapacity the size of each queue (at least 1)
+   */
+  public void setQueueCapacity(int queueCapacity)
+  {
+    if (queueCapacity < 1)
+      throw new IllegalArgumentException("queue must be at least 1: " + queueCapacity);
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Method to get the pipeline of the last run, which has how busy
+   * each stage was and how full the queues got
+   * @return the pipeline (or null if run hasn't been called)
+   */
+  public BatchPipeline getPipeline() { return pipeline; }
+
+  /**
+   * Method to set the format of the output files
+   * @param outputFormat an extension like png or jpg (or null to use
+   * the extension of each input file)
+   */
+  public void setOutputFormat(String outputFormat)
+  {
+    this.outputFormat = outputFormat;
+  }
+
+  /**
+   * Method to get the picture files in the input directory.  A file is
+   * a picture if ImageIO can read its extension or it is a raw picture.
+   * @return the picture files sorted by name
+   * @throws IOException if the input directory can't be listed
+   */
+  public List<File> listInputFiles() throws IOException
+  {
+    Set<String> suffixes = new HashSet<String>();
+    for (String suffix : ImageIO.getReaderFileSuffixes())
+      suffixes.add(suffix.toLowerCase(Locale.ROOT));
+    suffixes.add(RawPictureFile.EXTENSION);
+
+    File[] files = inputDir.listFiles();
+    if (files == null)
+      throw new IOException(inputDir + " isn't a directory that can be read");
+    Arrays.sort(files);
+    List<File> pictures = new ArrayList<File>();
+    for (File file : files)
+    {
+      String name = file.getName();
+      int posDot = name.lastIndexOf('.');
+      if (file.isFile() && posDot >= 0 &&
+          suffixes.contains(name.substring(posDot + 1).toLowerCase(Locale.ROOT)))
+        pictures.add(file);
+    }
+    return pictures;
+  }
+
+  /**
+   * Method to get the file to write the result for an input file to
+   * @param inputFile the input file
+   * @return the output file
+   */
+  public File getOutputFile(File inputFile)
+  {
+    String name = inputFile.getName();
+    if (outputFormat != null)
+    {
+      int posDot = name.lastIndexOf('.');
+      if (posDot >= 0)
+        name = name.substring(0, posDot);
+      name = name + "." + outputFormat;
+    }
+    return new File(outputDir, name);
+  }
+
+  /**
+   * Method to check that no two input files would be written to the
+   * same output file (like a.png and a.jpg with -format png)
+   * @param inputFiles the input files
+   * @throws IOException if two of them have the same output file
+   */
+  public void checkOutputFiles(List<File> inputFiles) throws IOException
+  {
+    Map<File, File> inputFor = new HashMap<File, File>();
+    for (File input : inputFiles)
+    {
+      File output = getOutputFile(input);
+      File other = inputFor.put(output, input);
+      if (other != null)
+        throw new IOException(other.getName() + " and " + input.getName() +
+                              " would both be written to " + output);
+    }
+  }
+
+  /**
+   * Method to run the filter chain on every picture in the input
+   * directory.  A picture that can't be read or written is reported
+   * and skipped.
+   * @return a summary of what was done
+   * @throws IOException if the directories can't be used or two
+   * pictures would be written to the same file
+   */
+  public Summary run() throws IOException
+  {
+    List<File> files = listInputFiles();
+    checkOutputFiles(files);
+    if (!outputDir.isDirectory() && !outputDir.mkdirs())
+      throw new IOException(outputDir + " could not be created");
+
+    pipeline = new BatchPipeline(decoders, threads, encoders, queueCapacity);
+    return pipeline.run(files, chain, this::getOutputFile);
+  }
+
+  /**
+   * Class that counts the pictures and bytes a batch has done and
+   * works out the throughput
+   */
+  public static class Summary
+  {
+    private final long startTime = System.nanoTime();
+    private long endTime;
+    private final AtomicInteger pictures = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile Throwable error;
+
+    void addFile(long inputBytes, long outputBytes)
+    {
+      pictures.incrementAndGet();
+      bytesRead.addAndGet(inputBytes);
+      bytesWritten.addAndGet(outputBytes);
+    }
+
+    void addFailure() { failures.incrementAndGet(); }
+
+    void finish(Throwable error)
+    {
+      endTime = System.nanoTime();
+      this.error = error;
+    }
+
+    /** @return the number of pictures done */
+    public int getPictureCount() { return pictures.get(); }
+
+    /** @return the number of pictures that couldn't be done */
+    public int getFailureCount() { return failures.get(); }
+
+    /**
+     * Method to get the error that stopped the batch before every
+     * picture was done
+     * @return the error or null if the batch wasn't stopped
+     */
+    public Throwable getError() { return error; }
+
+    /** @return the number of bytes in the input files that were done */
+    public long getBytesRead() { return bytesRead.get(); }
+
+    /** @return the number of bytes in the output files */
+    public long getBytesWritten() { return bytesWritten.get(); }
+
+    /** @return the time the batch took in seconds */
+    public double getSeconds() { return (endTime - startTime) / 1e9; }
+
+    /** @return the number of pictures done per second */
+    public double getPicturesPerSecond() { return getPictureCount() / getSeconds(); }
+
+    /** @return the number of input megabytes done per second */
+    public double getMegabytesReadPerSecond() { return getBytesRead() / 1e6 / getSeconds(); }
+
+    /** @return the number of output megabytes written per second */
+    public double getMegabytesWrittenPerSecond() { return getBytesWritten() / 1e6 / getSeconds(); }
+
+    public String toString()
+    {
+      String result = String.format(Locale.ROOT,
+                                    "%d pictures (%d failed) in %.2f s: %.1f pictures/s, " +
+                                    "%.1f MB/s read, %.1f MB/s written",
+                                    getPictureCount(), getFailureCount(), getSeconds(),
+                                    getPicturesPerSecond(), getMegabytesReadPerSecond(),
+                                    getMegabytesWrittenPerSecond());
+      if (error != null)
+        result = result + " (stopped early by " + error + ")";
+      return result;
+    }
+  }
+
+  /**
+   * Method to print how to use the batch processor and stop
+   */
+  private static void usage(String message)
+  {
+    if (message != null)
+      System.err.println(message);
+    System.err.println("usage: java BatchProcessor [-threads n] [-decoders n] [-encoders n] " +
+                       "[-queue n] [-format ext] inputDir chain outputDir");
+    System.err.println("  for example: java BatchProcessor images grayscale,blur:5,negate out");
+    System.exit(2);
+  }
+
+  /**
+   * Main method that runs a batch from the command line
+   * @param args the options, input directory, chain, and output directory
+   */
+  public static void main(String[] args)
+  {
+    // no windows are shown so don't need a display
+    if (System.getProperty("java.awt.headless") == null)
+      System.setProperty("java.awt.headless", "true");
+    // each file is read once so caching decoded pictures doesn't help
+    if (System.getProperty("pixlab.cache.bytes") == null)
+      System.setProperty("pixlab.cache.bytes", "0");
+
+    int threads = 0;
+    int decoders = 0;
+    int encoders = 0;
+    int queue = 0;
+    String format = null;
+    List<String> rest = new ArrayList<String>();
+    for (int i = 0; i < args.length; i++)
+    {
+      if (args[i].equals("-threads") && i + 1 < args.length)
+        threads = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-decoders") && i + 1 < args.length)
+        decoders = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-encoders") && i + 1 < args.length)
+        encoders = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-queue") && i + 1 < args.length)
+        queue = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-format") && i + 1 < args.length)
+        format = args[++i];
+      else if (args[i].startsWith("-"))
+        usage("unknown option " + args[i]);
+      else
+        rest.add(args[i]);
+    }
+    if (rest.size() != 3)
+      usage(null);
+
+    try
+    {
+      BatchProcessor batch = new BatchProcessor(new File(rest.get(0)), rest.get(1),
+                                                new File(rest.get(2)));
+      if (threads > 0)
+        batch.setThreads(threads);
+      if (decoders > 0)
+        batch.setDecoders(decoders);
+      if (encoders > 0)
+        batch.setEncoders(encoders);
+      if (queue > 0)
+        batch.setQueueCapacity(queue);
+      batch.setOutputFormat(format);
+      Summary summary = batch.run();
+      System.out.println(summary);
+      System.out.println(batch.getPipeline());
+      if (summary.getFailureCount() > 0 || summary.getError() != null)
+        System.exit(1);
+    }
+    catch (IllegalArgumentException ex)
+    {
+      usage(ex.getMessage());
+    }
+    catch (IOException ex)
+    {
+      System.err.println(ex.getMessage());
+      System.exit(1);
+    }
+  }
+
+}
@@ -0,0 +1,241 @@
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Class that changes each color of a pixel on its own using lookup
+ * tables.  There is a table of 256 entries for each of red, green,
+ * and blue that gives the new value for each old value, so applying
+ * a transform is one lookup per color no matter how the tables were
+ * made.  Transforms can be combined with then(), which builds new
+ * tables, so a chain of color changes costs the same as one.
+ * Alpha is left as it is.
+ */
+public class ColorTransform implements PixelOperation
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the new red for each old red */
+  private final int[] red;
+
+  /** the new green for each old green */
+  private final int[] green;
+
+  /** the new blue for each old blue */
+  private final int[] blue;
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * Constructor that takes the three lookup tables.  The tables are
+   * copied so changing them later doesn't change the transform.
+   * @param red the new red for each old red (256 values from 0 to 255)
+   * @param green the new green for each old green
+   * @param blue the new blue for each old blue
+   */
+  public ColorTransform(int[] red, int[] green, int[] blue)
+  {
+    this.red = checkTable(red, "red");
+    this.green = checkTable(green, "green");
+    this.blue = checkTable(blue, "blue");
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to make a transform from a function of a color value.
+   * The function is called once for each of the 256 values and
+   * the results are corrected to be within 0 to 255.
+   * @param red the function to use for red
+   * @param green the function to use for green
+   * @param blue the function to use for blue
+   * @return the transform
+   */
+  public static ColorTransform fromFunctions(IntUnaryOperator red,
+                                             IntUnaryOperator green,
+                                             IntUnaryOperator blue)
+  {
+    return new ColorTransform(makeTable(red), makeTable(green), makeTable(blue));
+  }
+
+  /**
+   * Method to make a transform that uses the same function for
+   * red, green, and blue
+   * @param function the function to use for each color
+   * @return the transform
+   */
+  public static ColorTransform fromFunction(IntUnaryOperator function)
+  {
+    int[] table = makeTable(function);
+    return new ColorTransform(table, table, table);
+  }
+
+  /**
+   * Method to make a transform that changes nothing
+   * @return the identity transform
+   */
+  public static ColorTransform identity()
+  {
+    return fromFunction(value -> value);
+  }
+
+  /**
+   * Method to make a transform that negates each color
+   * @return the negate transform
+   */
+  public static ColorTransform negate()
+  {
+    return fromFunction(value -> 255 - value);
+  }
+
+  /**
+   * Method to make a transform that sets the blue to 0
+   * @return the zero blue transform
+   */
+  public static ColorTransform zeroBlue()
+  {
+    return fromFunctions(value -> value, value -> value, value -> 0);
+  }
+
+  /**
+   * Method to make a transform that sets the red and green to 0
+   * @return the keep only blue transform
+   */
+  public static ColorTransform keepOnlyBlue()
+  {
+    return fromFunctions(value -> 0, value -> 0, value -> value);
+  }
+
+  /**
+   * Method to make a transform that adds an amount to each color,
+   * keeping the results within 0 to 255
+   * @param amount the amount to add (negative to darken)
+   * @return the brighten transform
+   */
+  public static ColorTransform brighten(int amount)
+  {
+    return fromFunction(value -> value + amount);
+  }
+
+  /**
+   * Method to make a transform that does this transform and then
+   * the passed one.  The tables are combined so the result is
+   * still a single lookup per color.
+   * @param next the transform to do after this one
+   * @return the combined transform
+   */
+  public ColorTransform then(ColorTransform next)
+  {
+    int[] newRed = new int[256];
+    int[] newGreen = new int[256];
+    int[] newBlue = new int[256];
+    for (int i = 0; i < 256; i++)
+    {
+      newRed[i] = next.red[red[i]];
+      newGreen[i] = next.green[green[i]];
+      newBlue[i] = next.blue[blue[i]];
+    }
+    return new ColorTransform(newRed, newGreen, newBlue);
+  }
+
+  /**
+   * Method to make an operation that does this transform and then
+   * the passed one.  Two color transforms are combined into one.
+   * @param next the operation to do after this one
+   * @return the combined operation
+   */
+  public PixelOperation andThen(PixelOperation next)
+  {
+    if (next instanceof ColorTransform)
+      return then((ColorTransform) next);
+    return PixelOperation.super.andThen(next);
+  }
+
+  /**
+   * Method to get the new value for a pixel
+   * @param value the current pixel value (alpha, red, green, blue)
+   * @param x the x (column) location of the pixel (not used)
+   * @param y the y (row) location of the pixel (not used)
+   * @return the new pixel value with the same alpha
+   */
+  public int apply(int value, int x, int y)
+  {
+    return apply(value);
+  }
+
+  /**
+   * Method to get the new value for a pixel
+   * @param value the current pixel value (alpha, red, green, blue)
+   * @return the new pixel value with the same alpha
+   */
+  public int apply(int value)
+  {
+    return (value & 0xff000000)
+      | (red[(value >> 16) & 0xff] << 16)
+      | (green[(value >> 8) & 0xff] << 8)
+      | blue[value & 0xff];
+  }
+
+  /**
+   * Method to change every pixel of a picture with this transform
+   * @param picture the picture to change
+   */
+  public void applyTo(SimplePicture picture)
+  {
+    FilterEngine.getDefault().apply(picture, this);
+  }
+
+  /**
+   * Method to get the new red for an old red
+   * @param value the old red (0 to 255)
+   * @return the new red
+   */
+  public int getRed(int value) { return red[value]; }
+
+  /**
+   * Method to get the new green for an old green
+   * @param value the old green (0 to 255)
+   * @return the new green
+   */
+  public int getGreen(int value) { return green[value]; }
+
+  /**
+   * Method to get the new blue for an old blue
+   * @param value the old blue (0 to 255)
+   * @return the new blue
+   */
+  public int getBlue(int value) { return blue[value]; }
+
+  /**
+   * Method to fill a table from a function, correcting the
+   * results to be within 0 to 255
+   * @param function the function to use
+   * @return the table
+   */
+  private static int[] makeTable(IntUnaryOperator function)
+  {
+    int[] table = new int[256];
+    for (int i = 0; i < 256; i++)
+      table[i] = Pixel.correctValue(function.applyAsInt(i));
+    return table;
+  }
+
+  /**
+   * Method to check and copy a table
+   * @param table the table to check
+   * @param name the name of the color for the error message
+   * @return a copy of the table
+   */
+  private static int[] checkTable(int[] table, String name)
+  {
+    if (table.length != 256)
+      throw new IllegalArgumentException("the " + name + " table must have 256 entries");
+    for (int value : table)
+    {
+      if (value < 0 || value > 255)
+        throw new IllegalArgumentException("the " + name + " table has " + value +
+                                           " which isn't within 0 to 255");
+    }
+    return table.clone();
+  }
+
+}
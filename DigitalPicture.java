@@ -25,6 +25,7 @@ public interface DigitalPicture
   public Pixel getPixel(int x, int y); // get the pixel information as an object
   public Pixel[] getPixels(); // get all pixels in row-major order
   public Pixel[][] getPixels2D(); // get 2-D array of pixels in row-major order
+  public default PixelCursor getPixelCursor() { return new PixelCursor(this); } // get a reusable cursor over the pixels
   public void load(Image image); // load the image into the picture
   public boolean load(String fileName); // load the picture from a file
   public void show(); // show the picture 
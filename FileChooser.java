@@ -1,6 +1,10 @@
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.*;
 import java.net.*;
   
@@ -14,21 +18,61 @@ import java.net.*;
 public class FileChooser 
 {
   
+  /////////////////////// fields /////////////////////////////
+  
+  /** the system property that sets the media directories */
+  public static final String MEDIA_PATH_PROPERTY = "pixlab.media.path";
+  
+  /** the most file names to remember before starting over */
+  private static final int MAX_RESOLVED = 10000;
+  
+  /** the media directories, worked out the first time they are needed */
+  private static volatile String[] mediaRoots;
+  
+  /** the full path found for each file name (only names that exist) */
+  private static final Map<String, String> resolved =
+    new ConcurrentHashMap<String, String>();
+  
   /////////////////////// methods /////////////////////////////
   
   /**
-   * Method to get the full path for the passed file name
+   * Method to get the full path for the passed file name.  If there
+   * is more than one media directory the first one that has the file
+   * is used, or the first directory if none has it.  The directory
+   * that has a name is remembered, so later calls don't look at the
+   * disk.  Names no directory has are looked for again each time,
+   * since the file may be added later.
    * @param fileName the name of a file
    * @return the full path for the file
    */
   public static String getMediaPath(String fileName) 
   {
-    String path = null;
-    String directory = getMediaDirectory();
-    boolean done = true;
+    String[] roots = getMediaRoots();
     
-    // get the full path
-    path = directory + fileName;
+    // with one directory there is nothing to search
+    if (roots.length == 1)
+      return roots[0] + fileName;
+    
+    String path = resolved.get(fileName);
+    if (path == null)
+    {
+      for (String root : roots)
+      {
+        if (new File(root + fileName).exists())
+        {
+          path = root + fileName;
+          break;
+        }
+      }
+      
+      // use the first directory if the file isn't found (but don't
+      // remember that so a file added later is found)
+      if (path == null)
+        return roots[0] + fileName;
+      if (resolved.size() >= MAX_RESOLVED)
+        resolved.clear();
+      resolved.put(fileName, path);
+    }
     return path;
   }
   
@@ -99,23 +143,78 @@ public class FileChooser
    */
   public static String getMediaDirectory() 
   {
-    String directory = null;
-    boolean done = false;
-    File dirFile = null;
+    return getMediaRoots()[0];
+  }
+  
+  /**
+   * Method to get the directories searched for media, in order.  They
+   * come from the pixlab.media.path system property (directories
+   * separated by File.pathSeparator) if it is set, otherwise from the
+   * images directory next to the directory this class was loaded from.
+   * They are only worked out the first time.
+   * @return the media directories, each ending in a separator
+   */
+  public static String[] getMediaRoots()
+  {
+    String[] roots = mediaRoots;
+    if (roots == null)
+    {
+      synchronized (FileChooser.class)
+      {
+        if (mediaRoots == null)
+        {
+          String property = System.getProperty(MEDIA_PATH_PROPERTY);
+          if (property != null && !property.trim().isEmpty())
+            setMediaPath(property);
+          else
+            setMediaPath(findImagesDirectory());
+        }
+        roots = mediaRoots;
+      }
+    }
+    return roots.clone();
+  }
+  
+  /**
+   * Method to set the directories searched for media.  This forgets
+   * where every file name was found.
+   * @param mediaPath one or more directories separated by
+   * File.pathSeparator
+   */
+  public static synchronized void setMediaPath(String mediaPath)
+  {
+    List<String> roots = new ArrayList<String>();
+    for (String root : mediaPath.split(File.pathSeparator))
+    {
+      root = root.trim();
+      if (root.isEmpty())
+        continue;
+      if (!root.endsWith("/") && !root.endsWith(File.separator))
+        root = root + File.separator;
+      roots.add(root);
+    }
+    if (roots.isEmpty())
+      throw new IllegalArgumentException("no media directory in \"" + mediaPath + "\"");
+    resolved.clear();
+    mediaRoots = roots.toArray(new String[roots.size()]);
+  }
+  
+  /**
+   * Method to find the images directory next to the directory this
+   * class was loaded from
+   * @return the images directory (which may not exist)
+   */
+  private static String findImagesDirectory()
+  {
+    String directory = "images" + File.separator;
     
     // try to find the images directory
       try {
         // get the URL for where we loaded this class 
-        Class currClass = Class.forName("FileChooser");
-        URL classURL = currClass.getResource("FileChooser.class");
+        URL classURL = FileChooser.class.getResource("FileChooser.class");
         URL fileURL = new URL(classURL,"../images/");
         directory = fileURL.getPath();
         directory = URLDecoder.decode(directory, "UTF-8");
-        dirFile = new File(directory);
-        if (dirFile.exists()) {
-          //setMediaPath(directory);
-          return directory;
-        }
       } catch (Exception ex) {
       }
       
@@ -0,0 +1,442 @@
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class that runs filters over a picture using several threads.  The
+ * picture is split into stripes of whole rows and the stripes are run
+ * on a ForkJoinPool.  Small pictures (and engines with a parallelism
+ * of 1) are filtered on the calling thread.
+ *
+ * The default engine uses one thread per processor.  Set the
+ * pixlab.parallelism system property to use a different number.  A
+ * thread that is already one of many doing the same work (like the
+ * filter threads of a BatchPipeline) can use its own engine with
+ * setForCurrentThread so the threads don't each use all the processors.
+ *
+ * When filters are run inside FilterProgress.run, each stripe or tile
+ * is run in bands that check for cancel first and report when they
+ * are done (see FilterProgress).  Filters that make a picture pass it
+ * to forEachRowStripe or forEachTile so the bands are reported as
+ * parts of that picture.
+ */
+public class FilterEngine
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** pictures with fewer pixels than this are filtered on one thread */
+  public static final int DEFAULT_MIN_PARALLEL_PIXELS = 1 << 16;
+
+  /** the default width and height of a tile for forEachTile */
+  public static final int DEFAULT_TILE_SIZE = 64;
+
+  /** how many stripes to make per thread so busy threads can be helped */
+  private static final int STRIPES_PER_THREAD = 4;
+
+  /** the engine used by the Picture filters */
+  private static FilterEngine defaultEngine;
+
+  /** the engine used instead of the default one on some threads */
+  private static final ThreadLocal<FilterEngine> threadEngine =
+    new ThreadLocal<FilterEngine>();
+
+  /** the pool that runs the stripes or null to run on the calling thread */
+  private final ForkJoinPool pool;
+
+  /** the number of threads to use */
+  private final int parallelism;
+
+  /** pictures with fewer pixels than this are filtered on one thread */
+  private final int minParallelPixels;
+
+  ////////////////////// interfaces ///////////////////////////////////
+
+  /**
+   * Interface for work done on a stripe of rows
+   */
+  public interface RowTask
+  {
+    /**
+     * Method to do the work for the rows from startRow up to
+     * (but not including) endRow
+     * @param startRow the first row of the stripe
+     * @param endRow the row just after the last row of the stripe
+     */
+    public void run(int startRow, int endRow);
+  }
+
+  /**
+   * Interface for work done on a stripe of columns
+   */
+  public interface ColumnTask
+  {
+    /**
+     * Method to do the work for the columns from startCol up to
+     * (but not including) endCol
+     * @param startCol the first column of the stripe
+     * @param endCol the column just after the last column of the stripe
+     */
+    public void run(int startCol, int endCol);
+  }
+
+  /**
+   * Interface for work done on a rectangular tile of a picture
+   */
+  public interface TileTask
+  {
+    /**
+     * Method to do the work for the pixels with x from x0 up to (but
+     * not including) x1 and y from y0 up to (but not including) y1
+     * @param x0 the left column of the tile
+     * @param y0 the top row of the tile
+     * @param x1 the column just after the right side of the tile
+     * @param y1 the row just below the bottom of the tile
+     */
+    public void run(int x0, int y0, int x1, int y1);
+  }
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * Constructor that takes the number of threads to use
+   * @param parallelism the number of threads (1 means don't use threads)
+   */
+  public FilterEngine(int parallelism)
+  {
+    this(parallelism, DEFAULT_MIN_PARALLEL_PIXELS);
+  }
+
+  /**
+   * Constructor that takes the number of threads to use and the
+   * smallest picture (in pixels) to split into stripes
+   * @param parallelism the number of threads (1 means don't use threads)
+   * @param minParallelPixels pictures with fewer pixels run on one thread
+   */
+  public FilterEngine(int parallelism, int minParallelPixels)
+  {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+    this.parallelism = parallelism;
+    this.minParallelPixels = minParallelPixels;
+    if (parallelism > 1)
+      this.pool = new ForkJoinPool(parallelism);
+    else
+      this.pool = null;
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to get the engine used by the Picture filters.  This is the
+   * engine set with setForCurrentThread if there is one.
+   * @return the default filter engine
+   */
+  public static FilterEngine getDefault()
+  {
+    FilterEngine engine = threadEngine.get();
+    if (engine != null)
+      return engine;
+    return getSharedDefault();
+  }
+
+  /**
+   * Method to get the engine used by threads that didn't set their own
+   * @return the shared default filter engine
+   */
+  private static synchronized FilterEngine getSharedDefault()
+  {
+    if (defaultEngine == null)
+    {
+      int parallelism = Runtime.getRuntime().availableProcessors();
+      String property = System.getProperty("pixlab.parallelism");
+      if (property != null)
+        parallelism = Integer.parseInt(property.trim());
+      defaultEngine = new FilterEngine(parallelism);
+    }
+    return defaultEngine;
+  }
+
+  /**
+   * Method to set the engine used by the Picture filters
+   * @param engine the engine to use
+   */
+  public static synchronized void setDefault(FilterEngine engine)
+  {
+    defaultEngine = engine;
+  }
+
+  /**
+   * Method to set the engine used by the Picture filters on the current
+   * thread only
+   * @param engine the engine to use or null to use the default again
+   */
+  public static void setForCurrentThread(FilterEngine engine)
+  {
+    if (engine == null)
+      threadEngine.remove();
+    else
+      threadEngine.set(engine);
+  }
+
+  /**
+   * Method to get the number of threads this engine uses
+   * @return the number of threads
+   */
+  public int getParallelism() { return parallelism; }
+
+  /**
+   * Method to run a task over all the rows of a picture of the given
+   * size.  The rows are split into stripes and the stripes may run at
+   * the same time on different threads, so the task must only change
+   * the rows it is given.  This returns when all the stripes are done.
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param task the task to run on each stripe
+   */
+  public void forEachRowStripe(int width, int height, RowTask task)
+  {
+    forEachRowStripe(width, height, null, task);
+  }
+
+  /**
+   * Method to run a task over all the rows of the picture a filter is
+   * making.  This is the same as forEachRowStripe(width, height, task)
+   * except that when the filter is watched (see FilterProgress) each
+   * band is reported as done in the picture.
+   * @param target the picture the task writes
+   * @param task the task to run on each stripe
+   */
+  public void forEachRowStripe(SimplePicture target, RowTask task)
+  {
+    forEachRowStripe(target.getWidth(), target.getHeight(), target, task);
+  }
+
+  /**
+   * Method to run a task over all the rows, reporting the bands as parts
+   * of target if it isn't null
+   */
+  private void forEachRowStripe(int width, int height, SimplePicture target, RowTask task)
+  {
+    if (height <= 0)
+      return;
+    FilterProgress progress = FilterProgress.current();
+    if (progress != null)
+      task = progress.trackRows(width, height, target, task);
+    runStripes(width, height, task);
+  }
+
+  /**
+   * Method to run a task over all the columns of a picture of the
+   * given size.  The columns are split into stripes and the stripes may
+   * run at the same time on different threads, so the task must only
+   * change the columns it is given.  Use this for work that goes down
+   * the picture a row at a time where each row needs the one above it,
+   * like adding up columns.  This returns when all the stripes are done.
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param task the task to run on each stripe
+   */
+  public void forEachColumnStripe(int width, int height, ColumnTask task)
+  {
+    if (width <= 0)
+      return;
+    FilterProgress progress = FilterProgress.current();
+    ColumnTask columnTask = progress == null ? task : progress.trackColumns(width, height, task);
+    runStripes(height, width, columnTask::run);
+  }
+
+  /**
+   * Method to split the range 0 to count into stripes and run them on
+   * the pool, or all at once on the calling thread if there are too
+   * few pixels
+   * @param length the number of pixels in each row (or column)
+   * @param count the number of rows (or columns) to split
+   * @param task the task to run on each stripe
+   */
+  private void runStripes(int length, int count, RowTask task)
+  {
+    if (pool == null || count == 1 || (long) length * count < minParallelPixels)
+    {
+      task.run(0, count);
+      return;
+    }
+    
+    int stripes = parallelism * STRIPES_PER_THREAD;
+    int stripeSize = (count + stripes - 1) / stripes;
+    pool.invoke(new StripeAction(task, 0, count, stripeSize));
+  }
+
+  /**
+   * Method to run a task over a picture of the given size split into
+   * DEFAULT_TILE_SIZE x DEFAULT_TILE_SIZE tiles
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param task the task to run on each tile
+   */
+  public void forEachTile(int width, int height, TileTask task)
+  {
+    forEachTile(width, height, DEFAULT_TILE_SIZE, null, task);
+  }
+
+  /**
+   * Method to run a task over the picture a filter is making split into
+   * DEFAULT_TILE_SIZE x DEFAULT_TILE_SIZE tiles.  When the filter is
+   * watched (see FilterProgress) each tile is reported as done in the
+   * picture.
+   * @param target the picture the task writes
+   * @param task the task to run on each tile
+   */
+  public void forEachTile(SimplePicture target, TileTask task)
+  {
+    forEachTile(target.getWidth(), target.getHeight(), DEFAULT_TILE_SIZE, target, task);
+  }
+
+  /**
+   * Method to run a task over a picture of the given size split into
+   * square tiles (the tiles on the right and bottom edges may be
+   * smaller).  Filters that work out each result pixel from pixels
+   * near it, like geometric remaps, should walk the result a tile at a
+   * time so the pixels they read and write stay in the cache.  Tiles
+   * may run at the same time on different threads, so the task must
+   * only change the pixels in its tile.
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param tileSize the width and height of a tile
+   * @param task the task to run on each tile
+   */
+  public void forEachTile(int width, int height, int tileSize, TileTask task)
+  {
+    forEachTile(width, height, tileSize, null, task);
+  }
+
+  /**
+   * Method to run a task over tiles, reporting them as parts of target
+   * if it isn't null
+   */
+  private void forEachTile(int width, int height, int tileSize, SimplePicture target,
+                           TileTask task)
+  {
+    if (width <= 0 || height <= 0)
+      return;
+    FilterProgress progress = FilterProgress.current();
+    TileTask tileTask = progress == null ? task
+      : progress.trackTiles(width, height, target, task);
+    int tilesAcross = (width + tileSize - 1) / tileSize;
+    int tilesDown = (height + tileSize - 1) / tileSize;
+    int tiles = tilesAcross * tilesDown;
+    RowTask tileRange = (startTile, endTile) -> {
+      for (int tile = startTile; tile < endTile; tile++)
+      {
+        int x0 = (tile % tilesAcross) * tileSize;
+        int y0 = (tile / tilesAcross) * tileSize;
+        tileTask.run(x0, y0, Math.min(x0 + tileSize, width), Math.min(y0 + tileSize, height));
+      }
+    };
+
+    if (pool == null || tiles == 1 || (long) width * height < minParallelPixels)
+    {
+      tileRange.run(0, tiles);
+      return;
+    }
+    int pieces = parallelism * STRIPES_PER_THREAD;
+    int tilesPerPiece = Math.max(1, (tiles + pieces - 1) / pieces);
+    pool.invoke(new StripeAction(tileRange, 0, tiles, tilesPerPiece));
+  }
+
+  /**
+   * Method to change every pixel of a picture with a point operation
+   * @param picture the picture to change
+   * @param operation the operation to do on each pixel
+   */
+  public void apply(SimplePicture picture, PixelOperation operation)
+  {
+    int[] pixels = picture.getPixelBuffer();
+    int width = picture.getWidth();
+    forEachRowStripe(picture, (startRow, endRow) -> {
+      for (int y = startRow; y < endRow; y++) {
+        int index = y * width;
+        for (int x = 0; x < width; x++, index++)
+          pixels[index] = operation.apply(pixels[index], x, y);
+      }
+    });
+  }
+
+  /**
+   * Method to change every pixel of an off-heap picture with a point
+   * operation.  The pixels are read and written in place in the
+   * picture's buffer.
+   * @param picture the picture to change
+   * @param operation the operation to do on each pixel
+   */
+  public void apply(OffHeapPicture picture, PixelOperation operation)
+  {
+    IntBuffer pixels = picture.getPixelBufferForFilter();
+    int width = picture.getWidth();
+    forEachRowStripe(width, picture.getHeight(), (startRow, endRow) -> {
+      for (int y = startRow; y < endRow; y++) {
+        int index = y * width;
+        for (int x = 0; x < width; x++, index++)
+          pixels.put(index, operation.apply(pixels.get(index), x, y));
+      }
+    });
+  }
+
+  /**
+   * Method to change every pixel of a picture with several point
+   * operations in order.  Each row gets all of the operations while it
+   * is still in the cache before moving on to the next row, so the
+   * picture is only read from and written to memory once.
+   * @param picture the picture to change
+   * @param operations the operations to do in order
+   */
+  public void apply(SimplePicture picture, PixelOperation... operations)
+  {
+    int[] pixels = picture.getPixelBuffer();
+    int width = picture.getWidth();
+    forEachRowStripe(picture, (startRow, endRow) -> {
+      for (int y = startRow; y < endRow; y++) {
+        int start = y * width;
+        for (PixelOperation operation : operations) {
+          for (int x = 0, index = start; x < width; x++, index++)
+            pixels[index] = operation.apply(pixels[index], x, y);
+        }
+      }
+    });
+  }
+
+  /**
+   * Class that splits a range of rows in half until the pieces are
+   * no bigger than a stripe and then runs the task on them
+   */
+  private static class StripeAction extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final RowTask task;
+    private final int startRow;
+    private final int endRow;
+    private final int stripeRows;
+
+    StripeAction(RowTask task, int startRow, int endRow, int stripeRows)
+    {
+      this.task = task;
+      this.startRow = startRow;
+      this.endRow = endRow;
+      this.stripeRows = stripeRows;
+    }
+
+    protected void compute()
+    {
+      if (endRow - startRow <= stripeRows)
+      {
+        task.run(startRow, endRow);
+        return;
+      }
+      int middle = (startRow + endRow) >>> 1;
+      invokeAll(new StripeAction(task, startRow, middle, stripeRows),
+                new StripeAction(task, middle, endRow, stripeRows));
+    }
+  }
+
+}
@@ -0,0 +1,290 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Class that builds a chain of filters to run on a picture.  Point
+ * filters (ones that change each pixel on its own, like negate or
+ * grayscale) that come one after another are fused: each row gets all
+ * of them while it is in the cache, so the picture is only walked once
+ * for the whole group.  Color transforms next to each other are
+ * combined into a single set of lookup tables.  Neighborhood filters (like
+ * blur and enhance) need the finished result of the filters before
+ * them, so they end the fused group and make a new picture.
+ *
+ * Point filters change the picture in place, so the picture the
+ * pipeline was made from is changed until the first neighborhood
+ * filter.  For example:
+ * <pre>
+ *   Picture result = beach.pipeline().negate().grayscale()
+ *                         .addWatermark().blur(5).run();
+ * </pre>
+ */
+public class FilterPipeline
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the picture the pipeline starts from */
+  private final Picture picture;
+
+  /** the finished stages (fused point groups and neighborhood filters) */
+  private final List<UnaryOperator<Picture>> stages = new ArrayList<UnaryOperator<Picture>>();
+
+  /** the point operations since the last neighborhood filter */
+  private final List<PixelOperation> points = new ArrayList<PixelOperation>();
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * Constructor that takes the picture to start from
+   * @param picture the picture to run the filters on
+   */
+  public FilterPipeline(Picture picture)
+  {
+    this.picture = picture;
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to add a point operation to the pipeline
+   * @param operation the operation to do on each pixel
+   * @return this pipeline so calls can be chained
+   */
+  public FilterPipeline apply(PixelOperation operation)
+  {
+    // color transforms next to each other become one lookup table
+    int last = points.size() - 1;
+    if (operation instanceof ColorTransform && last >= 0 &&
+        points.get(last) instanceof ColorTransform)
+      points.set(last, ((ColorTransform) points.get(last)).then((ColorTransform) operation));
+    else
+      points.add(operation);
+    return this;
+  }
+
+  /**
+   * Method to add a filter that needs the whole picture and returns
+   * a new one.  The point operations before it are run first.
+   * @param filter the filter to add
+   * @return this pipeline so calls can be chained
+   */
+  public FilterPipeline then(UnaryOperator<Picture> filter)
+  {
+    flushPoints();
+    stages.add(filter);
+    return this;
+  }
+
+  /**
+   * Method to add zeroBlue to the pipeline
+   * @return this pipeline so calls can be chained
+   */
+  public FilterPipeline zeroBlue() { return apply(Picture.ZERO_BLUE); }
+
+  /**
+   * Method to add keepOnlyBlue to the pipeline
+   * @return this pipeline so calls can be chained
+   */
+  public FilterPipeline keepOnlyBlue() { return apply(Picture.KEEP_ONLY_BLUE); }
+
+  /**
+   * Method to add negate to the pipeline
+   * @return this pipeline so calls can be chained
+   */
+  public FilterPipeline negate() { return apply(Picture.NEGATE); }
+
+  /**
+   * Method to add grayscale to the pipeline
+   * @return this pipeline so calls can be chained
+   */
+  public FilterPipeline grayscale() { return apply(Picture.GRAYSCALE); }
+
+  /**
+   * Method to add grayscale with the passed weighting to the pipeline
+   * @param mode how to turn each color into a gray
+   * @return this pipeline so calls can be chained
+   */
+  public FilterPipeline grayscale(GrayscaleMode mode) { return apply(mode); }
+
+  /**
+   * Method to add fixUnderwater to the pipeline
+   * @return this pipeline so calls can be chained
+   */
+  public FilterPipeline fixUnderwater() { return apply(Picture.FIX_UNDERWATER); }
+
+  /**
+   * Method to add addWatermark to the pipeline
+   * @return this pipeline so calls can be chained
+   */
+  public FilterPipeline addWatermark() { return apply(Picture.WATERMARK); }
+
+  /**
+   * Method to add blur to the pipeline
+   * @param size Blur size, greater is more blur
+   * @return this pipeline so calls can be chained
+   */
+  public FilterPipeline blur(int size) { return then(p -> p.blur(size)); }
+
+  /**
+   * Method to add enhance to the pipeline
+   * @param size Larger means more area to average around pixel
+   * @return this pipeline so calls can be chained
+   */
+  public FilterPipeline enhance(int size) { return then(p -> p.enhance(size)); }
+
+  /**
+   * Method to run the pipeline
+   * @return the resulting picture (the starting picture if there
+   * are no neighborhood filters)
+   */
+  public Picture run()
+  {
+    Picture result = picture;
+    for (UnaryOperator<Picture> stage : stages)
+      result = stage.apply(result);
+    if (!points.isEmpty())
+      FilterEngine.getDefault().apply(result,
+                                      points.toArray(new PixelOperation[points.size()]));
+    return result;
+  }
+
+  /**
+   * Method to turn a filter chain written as text into a function that
+   * runs the chain on a picture.  Filters are separated by commas and
+   * a filter that takes a number has it after a colon, for example
+   * "grayscale,blur:5,negate" or "grayscale:rec709,rotate:30".  The
+   * names are the Picture method names (case doesn't matter): zeroBlue,
+   * keepOnlyBlue, negate, grayscale (with an optional GrayscaleMode),
+   * fixUnderwater, addWatermark, blur, enhance, pixelate, swapLeftRight,
+   * mirrorVertical, edgeDetection, edgeDetectionBelow, wavy, and rotate.
+   * @param spec the filter chain
+   * @return a function that runs the chain on a picture and returns
+   * the result (which may be the same picture)
+   * @throws IllegalArgumentException if a filter isn't known, is
+   * missing its number, or is given an argument it doesn't take
+   */
+  public static UnaryOperator<Picture> parse(String spec)
+  {
+    List<Consumer<FilterPipeline>> steps = new ArrayList<Consumer<FilterPipeline>>();
+    for (String filter : spec.split(","))
+    {
+      filter = filter.trim();
+      if (filter.isEmpty())
+        continue;
+      int colon = filter.indexOf(':');
+      String name = filter.toLowerCase();
+      String argument = null;
+      if (colon >= 0)
+      {
+        name = filter.substring(0, colon).trim().toLowerCase();
+        argument = filter.substring(colon + 1).trim();
+      }
+      steps.add(parseStep(name, argument, filter));
+    }
+    return p -> {
+      FilterPipeline pipeline = p.pipeline();
+      for (Consumer<FilterPipeline> step : steps)
+        step.accept(pipeline);
+      return pipeline.run();
+    };
+  }
+
+  /**
+   * Method to turn one filter of a chain into a step that adds it to
+   * a pipeline
+   */
+  private static Consumer<FilterPipeline> parseStep(String name, String argument,
+                                                    String filter)
+  {
+    Consumer<FilterPipeline> plain = parsePlainStep(name);
+    if (plain != null)
+    {
+      if (argument != null)
+        throw new IllegalArgumentException("filter takes no argument: " + filter);
+      return plain;
+    }
+
+    switch (name)
+    {
+      case "grayscale":
+        if (argument == null)
+          return FilterPipeline::grayscale;
+        try
+        {
+          GrayscaleMode mode = GrayscaleMode.valueOf(argument.toUpperCase());
+          return f -> f.grayscale(mode);
+        }
+        catch (IllegalArgumentException ex)
+        {
+          throw new IllegalArgumentException("unknown grayscale mode in " + filter);
+        }
+      default:
+        break;
+    }
+
+    if (argument == null)
+      throw new IllegalArgumentException("unknown filter or missing :number in " + filter);
+    double number;
+    try
+    {
+      number = Double.parseDouble(argument);
+    }
+    catch (NumberFormatException ex)
+    {
+      throw new IllegalArgumentException("bad number in " + filter);
+    }
+    int size = (int) number;
+    switch (name)
+    {
+      case "blur": return f -> f.blur(size);
+      case "enhance": return f -> f.enhance(size);
+      case "pixelate": return f -> f.then(p -> { p.pixelate(size); return p; });
+      case "edgedetection": return f -> f.then(p -> { p.edgeDetection(size); return p; });
+      case "edgedetectionbelow": return f -> f.then(p -> p.edgeDetectionBelow(size));
+      case "wavy": return f -> f.then(p -> p.wavy(size));
+      case "rotate": return f -> f.then(p -> p.rotate(number));
+      default:
+        throw new IllegalArgumentException("unknown filter " + filter);
+    }
+  }
+
+  /**
+   * Method to get the step for a filter that takes no argument
+   * @param name the filter name in lower case
+   * @return the step or null if the filter isn't one of those
+   */
+  private static Consumer<FilterPipeline> parsePlainStep(String name)
+  {
+    switch (name)
+    {
+      case "zeroblue": return FilterPipeline::zeroBlue;
+      case "keeponlyblue": return FilterPipeline::keepOnlyBlue;
+      case "negate": return FilterPipeline::negate;
+      case "fixunderwater": return FilterPipeline::fixUnderwater;
+      case "addwatermark": return FilterPipeline::addWatermark;
+      case "swapleftright": return f -> f.then(Picture::swapLeftRight);
+      case "mirrorvertical": return f -> f.then(p -> { p.mirrorVertical(); return p; });
+      default: return null;
+    }
+  }
+
+  /**
+   * Method to end the current group of point operations by making
+   * it a stage
+   */
+  private void flushPoints()
+  {
+    if (points.isEmpty())
+      return;
+    PixelOperation[] fused = points.toArray(new PixelOperation[points.size()]);
+    points.clear();
+    stages.add(p -> {
+      FilterEngine.getDefault().apply(p, fused);
+      return p;
+    });
+  }
+
+}
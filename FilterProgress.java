@@ -0,0 +1,252 @@
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Class that follows filters as they run so they can be shown while
+ * they work and stopped part way.  Filters run inside run(...) are
+ * watched: while they run, the FilterEngine splits their work into
+ * bands of rows (or tiles) and, after each one, tells the listeners
+ * which part of the picture being made is done.  Calling cancel makes
+ * the filter stop at the start of its next band by throwing a
+ * CancellationException out of run.
+ *
+ * Filters say which picture they are making by passing it to the
+ * FilterEngine (see FilterEngine.forEachRowStripe(SimplePicture,
+ * RowTask)), so listeners know which picture the finished parts are
+ * in.  Work that doesn't write a picture, like building the sums for a
+ * blur, is only counted.  For example:
+ * <pre>
+ *   FilterProgress progress = new FilterProgress();
+ *   progress.addListener(listener);
+ *   Picture blurred = progress.run(() -> beach.blur(50));
+ * </pre>
+ * See PictureExplorer.runWithPreview for a listener that shows the
+ * picture as it is made with a menu item to cancel it.
+ */
+public class FilterProgress
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** about how many pixels are done between reports */
+  public static final int BAND_PIXELS = 1 << 16;
+
+  /** the progress being followed on each thread that runs filters */
+  private static final ThreadLocal<FilterProgress> current = new ThreadLocal<FilterProgress>();
+
+  /** the listeners to tell about the progress */
+  private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+  /** true if cancel has been called */
+  private volatile boolean cancelled;
+
+  /** the pixels in the work started so far */
+  private final AtomicLong totalPixels = new AtomicLong();
+
+  /** the pixels in the work done so far */
+  private final AtomicLong donePixels = new AtomicLong();
+
+  ////////////////////// interfaces ///////////////////////////////////
+
+  /**
+   * Interface for things that want to know how a filter is doing.
+   * The methods are called on the threads running the filter, so they
+   * should return quickly.
+   */
+  public interface Listener
+  {
+    /**
+     * Method called when a part of the picture being made is done.  A
+     * chain of filters makes several pictures, so target changes when
+     * the next filter starts.
+     * @param target the picture being made
+     * @param x0 the left column of the part
+     * @param y0 the top row of the part
+     * @param x1 the column just after the right side of the part
+     * @param y1 the row just below the bottom of the part
+     */
+    public void regionDone(SimplePicture target, int x0, int y0, int x1, int y1);
+
+    /**
+     * Method called when the filters are done or stopped
+     * @param wasCancelled true if they were stopped by cancel
+     */
+    public void finished(boolean wasCancelled);
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to get the progress being followed on this thread
+   * @return the progress or null if filters on this thread aren't watched
+   */
+  static FilterProgress current()
+  {
+    return current.get();
+  }
+
+  /**
+   * Method to add a listener
+   * @param listener the listener to tell about the progress
+   */
+  public void addListener(Listener listener) { listeners.add(listener); }
+
+  /**
+   * Method to remove a listener
+   * @param listener the listener to stop telling
+   */
+  public void removeListener(Listener listener) { listeners.remove(listener); }
+
+  /**
+   * Method to run filters while watching them
+   * @param filters the filters to run
+   * @return what the filters return
+   * @throws CancellationException if cancel was called before they were done
+   */
+  public <T> T run(Supplier<T> filters)
+  {
+    FilterProgress outer = current.get();
+    current.set(this);
+    boolean stopped = false;
+    try
+    {
+      return filters.get();
+    }
+    catch (CancellationException ex)
+    {
+      stopped = true;
+      throw ex;
+    }
+    finally
+    {
+      if (outer == null)
+        current.remove();
+      else
+        current.set(outer);
+      for (Listener listener : listeners)
+        listener.finished(stopped);
+    }
+  }
+
+  /**
+   * Method to ask the filters to stop.  They stop at the start of
+   * their next band of work.
+   */
+  public void cancel() { cancelled = true; }
+
+  /**
+   * Method to check if cancel was called
+   * @return true if the filters were asked to stop
+   */
+  public boolean isCancelled() { return cancelled; }
+
+  /**
+   * Method to get how much of the work started so far is done.  A
+   * chain of filters starts more work as it goes, so this can go down
+   * when the next filter starts.
+   * @return the fraction done from 0 to 1
+   */
+  public double getFraction()
+  {
+    long total = totalPixels.get();
+    if (total == 0)
+      return 0;
+    return Math.min(1.0, (double) donePixels.get() / total);
+  }
+
+  /**
+   * Method to throw if cancel was called
+   * @throws CancellationException if the filters were asked to stop
+   */
+  private void checkCancelled()
+  {
+    if (cancelled)
+      throw new CancellationException("filter cancelled");
+  }
+
+  /**
+   * Method to count a part of a pass as done and tell the listeners
+   * about it if the pass writes a picture
+   * @param target the picture the pass writes (or null if it doesn't)
+   */
+  private void regionDone(SimplePicture target, int x0, int y0, int x1, int y1)
+  {
+    donePixels.addAndGet((long) (x1 - x0) * (y1 - y0));
+    if (target == null)
+      return;
+    for (Listener listener : listeners)
+      listener.regionDone(target, x0, y0, x1, y1);
+  }
+
+  /**
+   * Method to wrap a row task so it runs in bands, checking for cancel
+   * before each band and reporting each band when it is done
+   * @param width the width of the pass
+   * @param height the height of the pass
+   * @param target the picture the task writes (or null if it doesn't)
+   * @param task the task to wrap
+   * @return the wrapped task
+   */
+  FilterEngine.RowTask trackRows(int width, int height, SimplePicture target,
+                                 FilterEngine.RowTask task)
+  {
+    totalPixels.addAndGet((long) width * height);
+    int bandRows = (BAND_PIXELS + width - 1) / Math.max(1, width);
+    return (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row += bandRows)
+      {
+        checkCancelled();
+        int end = Math.min(endRow, row + bandRows);
+        task.run(row, end);
+        regionDone(target, 0, row, width, end);
+      }
+    };
+  }
+
+  /**
+   * Method to wrap a column task so it runs in bands, checking for
+   * cancel before each band and counting each band when it is done
+   * @param width the width of the pass
+   * @param height the height of the pass
+   * @param task the task to wrap
+   * @return the wrapped task
+   */
+  FilterEngine.ColumnTask trackColumns(int width, int height, FilterEngine.ColumnTask task)
+  {
+    totalPixels.addAndGet((long) width * height);
+    int bandColumns = (BAND_PIXELS + height - 1) / Math.max(1, height);
+    return (startCol, endCol) -> {
+      for (int col = startCol; col < endCol; col += bandColumns)
+      {
+        checkCancelled();
+        int end = Math.min(endCol, col + bandColumns);
+        task.run(col, end);
+        regionDone(null, col, 0, end, height);
+      }
+    };
+  }
+
+  /**
+   * Method to wrap a tile task so it checks for cancel before each
+   * tile and reports each tile when it is done
+   * @param width the width of the pass
+   * @param height the height of the pass
+   * @param target the picture the task writes (or null if it doesn't)
+   * @param task the task to wrap
+   * @return the wrapped task
+   */
+  FilterEngine.TileTask trackTiles(int width, int height, SimplePicture target,
+                                   FilterEngine.TileTask task)
+  {
+    totalPixels.addAndGet((long) width * height);
+    return (x0, y0, x1, y1) -> {
+      checkCancelled();
+      task.run(x0, y0, x1, y1);
+      regionDone(target, x0, y0, x1, y1);
+    };
+  }
+
+}
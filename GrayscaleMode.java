@@ -0,0 +1,84 @@
+/**
+ * The ways a color can be turned into a gray.  Each mode is a
+ * weighted sum of red, green, and blue.  The weights are kept as
+ * 16-bit fixed-point integers that add up to 65536 (except AVERAGE,
+ * whose weights round up to 65538 so its integer average is exact),
+ * so the gray is found with multiplies and a shift instead of a
+ * divide, and the pixel is written once with the gray in all three
+ * colors.
+ */
+public enum GrayscaleMode implements PixelOperation
+{
+  /**
+   * The plain average (red + green + blue) / 3.  21846 / 65536 is
+   * close enough to 1/3 that the result is exactly the integer
+   * average for every possible sum, so there is no rounding term.
+   */
+  AVERAGE(21846, 21846, 21846, 0),
+
+  /** The ITU-R BT.601 (standard definition video) luma weights */
+  REC601(19595, 38470, 7471, 1 << 15),
+
+  /** The ITU-R BT.709 (HD video and sRGB) luma weights */
+  REC709(13933, 46871, 4732, 1 << 15);
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the red weight out of 65536 */
+  private final int redWeight;
+
+  /** the green weight out of 65536 */
+  private final int greenWeight;
+
+  /** the blue weight out of 65536 */
+  private final int blueWeight;
+
+  /** added before the shift (half of 65536 rounds to nearest) */
+  private final int rounding;
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * Constructor that takes the fixed-point weights
+   * @param redWeight the red weight out of 65536
+   * @param greenWeight the green weight out of 65536
+   * @param blueWeight the blue weight out of 65536
+   * @param rounding the amount to add before shifting
+   */
+  private GrayscaleMode(int redWeight, int greenWeight, int blueWeight, int rounding)
+  {
+    this.redWeight = redWeight;
+    this.greenWeight = greenWeight;
+    this.blueWeight = blueWeight;
+    this.rounding = rounding;
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to get the gray for a pixel value
+   * @param value the pixel value (alpha, red, green, blue)
+   * @return the gray from 0 to 255
+   */
+  public int getGray(int value)
+  {
+    return (((value >> 16) & 0xff) * redWeight
+            + ((value >> 8) & 0xff) * greenWeight
+            + (value & 0xff) * blueWeight
+            + rounding) >>> 16;
+  }
+
+  /**
+   * Method to get the gray pixel for a pixel value
+   * @param value the current pixel value (alpha, red, green, blue)
+   * @param x the x (column) location of the pixel (not used)
+   * @param y the y (row) location of the pixel (not used)
+   * @return the pixel value with the gray in red, green, and blue
+   * and the same alpha
+   */
+  public int apply(int value, int x, int y)
+  {
+    int gray = getGray(value);
+    return (value & 0xff000000) | (gray << 16) | (gray << 8) | gray;
+  }
+}
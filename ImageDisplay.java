@@ -1,9 +1,19 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * Class to display an image and the current location with a + sign
+ * Class to display an image and the current location with a + sign.
+ * Only the part of the image in the clip is drawn.  When the image is
+ * drawn at a scale it is cut into tiles and the scaled tiles that have
+ * been drawn are kept, so scrolling back doesn't scale them again.
+ * Tiles are drawn from the image through a scaled Graphics2D with the
+ * chosen interpolation, so zooming only costs as much as the pixels
+ * that show (no scaled copy of the whole image is made).
+ * Moving the + sign only repaints around its old and new location.
  * 
  * @author Barb Ericson ericson@cc.gatech.edu
  */
@@ -11,6 +21,12 @@ public class ImageDisplay extends JPanel implements Scrollable
 {
   
   /////////////////////////// fields (attributes ///////////////////////////
+  /** the width and height of the tiles a scaled image is drawn in */
+  public static final int TILE_SIZE = 256;
+  /** the most scaled tiles to keep (enough to cover a large screen) */
+  private static final int MAX_TILES = 128;
+  /** how far the + sign reaches from the current location */
+  private static final int CROSS_SIZE = 3;
   /** the image to draw */
   private Image image;         
   /** the preferred size of the display */
@@ -19,6 +35,17 @@ public class ImageDisplay extends JPanel implements Scrollable
   private int currentX = 0;    
   /** the current y index */
   private int currentY = 0;    
+  /** how much bigger or smaller to draw the image */
+  private double scale = 1;
+  /** the interpolation hint to scale with */
+  private Object interpolation = RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+  /** the scaled tiles drawn so far, least recently used first */
+  private final Map<Long,Image> tiles = 
+    new LinkedHashMap<Long,Image>(16, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry<Long,Image> eldest) {
+      return size() > MAX_TILES;
+    }
+  };
   
   //////////////////////////// constructors /////////////////////////////////
   
@@ -73,8 +100,9 @@ public class ImageDisplay extends JPanel implements Scrollable
    */
   public void setCurrentX(int x) 
   {
+    repaintCross();
     currentX = x;
-    repaint();
+    repaintCross();
   }
   
   /**
@@ -83,7 +111,44 @@ public class ImageDisplay extends JPanel implements Scrollable
    */
   public void setCurrentY(int y) 
   {
+    repaintCross();
     currentY = y;
+    repaintCross();
+  }
+  
+  /**
+   * Method to repaint just the area the + sign covers
+   */
+  private void repaintCross()
+  {
+    repaint(currentX - CROSS_SIZE, currentY - CROSS_SIZE, 
+            2 * CROSS_SIZE + 1, 2 * CROSS_SIZE + 1);
+  }
+  
+  /**
+   * Method to get how much bigger or smaller the image is drawn
+   * @return the scale (1 is the image's own size)
+   */
+  public double getScale() { return scale; }
+  
+  /**
+   * Method to get how pixels are worked out when the image is scaled
+   * @return the RenderingHints.KEY_INTERPOLATION value used
+   */
+  public Object getInterpolation() { return interpolation; }
+  
+  /**
+   * Method to set how pixels are worked out when the image is scaled.
+   * Nearest neighbor (the default) shows each pixel as a square, which
+   * is best for looking at pixels; bilinear and bicubic are smoother.
+   * @param hint a RenderingHints.KEY_INTERPOLATION value
+   */
+  public void setInterpolation(Object hint)
+  {
+    if (!RenderingHints.KEY_INTERPOLATION.isCompatibleValue(hint))
+      throw new IllegalArgumentException("not an interpolation hint: " + hint);
+    interpolation = hint;
+    tiles.clear();
     repaint();
   }
   
@@ -92,12 +157,75 @@ public class ImageDisplay extends JPanel implements Scrollable
    * @param theImage the new image to use
    */
   public void setImage(Image theImage)
+  {
+    setImage(theImage,1);
+  }
+  
+  /**
+   * Method to set the image and how much bigger or smaller to draw
+   * it.  Only the part of the image that shows is scaled when it is
+   * drawn, so no scaled copy of the whole image is made.
+   * @param theImage the new image to use
+   * @param theScale the scale to draw it at (1 is its own size)
+   */
+  public void setImage(Image theImage, double theScale)
   {
     image = theImage;
-    setPreferredSize(new Dimension(image.getWidth(this),image.getHeight(this)));
+    scale = theScale;
+    tiles.clear();
+    setPreferredSize(new Dimension(getDrawnWidth(),getDrawnHeight()));
     repaint();
   }
   
+  /**
+   * Method to tell the display that part of its image changed.  Only
+   * the scaled tiles over that part are dropped and only that part is
+   * repainted.
+   * @param region the part of the image that changed (in image pixels)
+   */
+  public void imageChanged(Rectangle region)
+  {
+    // one more pixel all around since scaled pixels blend with their neighbors
+    int x0 = Math.max(0, (int) Math.floor(region.x * scale) - 1);
+    int y0 = Math.max(0, (int) Math.floor(region.y * scale) - 1);
+    int x1 = (int) Math.ceil((region.x + region.width) * scale) + 1;
+    int y1 = (int) Math.ceil((region.y + region.height) * scale) + 1;
+    
+    Iterator<Long> keys = tiles.keySet().iterator();
+    while (keys.hasNext())
+    {
+      long key = keys.next();
+      int column = (int) key;
+      int row = (int) (key >>> 32);
+      if (column * TILE_SIZE < x1 && (column + 1) * TILE_SIZE > x0 &&
+          row * TILE_SIZE < y1 && (row + 1) * TILE_SIZE > y0)
+        keys.remove();
+    }
+    repaint(x0,y0,x1 - x0,y1 - y0);
+  }
+  
+  /**
+   * Method to get the width of the image as it is drawn
+   * @return the drawn width
+   */
+  private int getDrawnWidth()
+  {
+    if (scale == 1)
+      return image.getWidth(this);
+    return Math.max(1, (int) (image.getWidth(this) * scale));
+  }
+  
+  /**
+   * Method to get the height of the image as it is drawn
+   * @return the drawn height
+   */
+  private int getDrawnHeight()
+  {
+    if (scale == 1)
+      return image.getHeight(this);
+    return Math.max(1, (int) (image.getHeight(this) * scale));
+  }
+  
   /**
    * Method to return the preferred size
    * @return the preferred size of this component
@@ -154,18 +282,21 @@ public class ImageDisplay extends JPanel implements Scrollable
   public void paintComponent(Graphics g)
   {
     super.paintComponent(g);
-    int num = 3;
+    int num = CROSS_SIZE;
     int xStart = currentX - num;
     int xEnd = currentX + num;
     int yStart = currentY - num;
     int yEnd = currentY + num;
-    int width = image.getWidth(this);
+    int width = getDrawnWidth();
     int maxX = width - 1;
-    int height = image.getHeight(this);
+    int height = getDrawnHeight();
     int maxY = height - 1;
     
-    // draw the image
-    g.drawImage(image,0,0,this);
+    // draw the image (only the part in the clip is drawn)
+    if (scale == 1)
+      g.drawImage(image,0,0,this);
+    else
+      drawTiles(g,width,height);
     
     // check if the current index is in the image
     if (currentX >= 0 && currentX < width &&
@@ -213,4 +344,78 @@ public class ImageDisplay extends JPanel implements Scrollable
     }
   }
   
+  /**
+   * Method to draw the scaled tiles that are in the clip
+   * @param g the graphics object for drawing with
+   * @param width the width of the scaled image
+   * @param height the height of the scaled image
+   */
+  private void drawTiles(Graphics g, int width, int height)
+  {
+    Rectangle clip = g.getClipBounds();
+    if (clip == null)
+      clip = new Rectangle(0,0,width,height);
+    int firstColumn = Math.max(0, clip.x / TILE_SIZE);
+    int lastColumn = Math.min((width - 1) / TILE_SIZE, 
+                              (clip.x + clip.width - 1) / TILE_SIZE);
+    int firstRow = Math.max(0, clip.y / TILE_SIZE);
+    int lastRow = Math.min((height - 1) / TILE_SIZE, 
+                           (clip.y + clip.height - 1) / TILE_SIZE);
+    for (int row = firstRow; row <= lastRow; row++)
+    {
+      for (int column = firstColumn; column <= lastColumn; column++)
+      {
+        Image tile = getTile(column,row,width,height);
+        g.drawImage(tile,column * TILE_SIZE,row * TILE_SIZE,this);
+      }
+    }
+  }
+  
+  /**
+   * Method to get a tile of the scaled image, drawing it if it
+   * isn't kept
+   * @param column the column of the tile
+   * @param row the row of the tile
+   * @param width the width of the scaled image
+   * @param height the height of the scaled image
+   * @return the tile
+   */
+  private Image getTile(int column, int row, int width, int height)
+  {
+    Long key = ((long) row << 32) | column;
+    Image tile = tiles.get(key);
+    if (tile == null)
+    {
+      int x = column * TILE_SIZE;
+      int y = row * TILE_SIZE;
+      int tileWidth = Math.min(TILE_SIZE, width - x);
+      int tileHeight = Math.min(TILE_SIZE, height - y);
+      
+      // use the screen's pixel format if there is one so drawing is a copy
+      boolean hasAlpha = image instanceof BufferedImage && 
+        ((BufferedImage) image).getColorModel().hasAlpha();
+      GraphicsConfiguration config = getGraphicsConfiguration();
+      BufferedImage tileImage;
+      if (config != null)
+        tileImage = config.createCompatibleImage(tileWidth,tileHeight,
+                                                 hasAlpha ? Transparency.TRANSLUCENT
+                                                   : Transparency.OPAQUE);
+      else
+        tileImage = new BufferedImage(tileWidth,tileHeight,
+                                      hasAlpha ? BufferedImage.TYPE_INT_ARGB
+                                        : BufferedImage.TYPE_INT_RGB);
+      
+      // draw the image scaled and moved so only this tile lands in it
+      Graphics2D g2 = tileImage.createGraphics();
+      g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,interpolation);
+      g2.translate(-x,-y);
+      g2.scale(scale,scale);
+      g2.drawImage(image,0,0,null);
+      g2.dispose();
+      tile = tileImage;
+      tiles.put(key,tile);
+    }
+    return tile;
+  }
+  
 }
@@ -0,0 +1,99 @@
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.nio.IntBuffer;
+import java.util.Hashtable;
+
+/**
+ * Class that is a data buffer whose ints are kept in an IntBuffer
+ * instead of an int array.  This lets a BufferedImage show pixels that
+ * are outside the Java heap, like a mapped raw picture file (see
+ * RawPictureFile) or an OffHeapPicture.  Changing an element of a
+ * read-only buffer throws a ReadOnlyBufferException.
+ */
+public class IntBufferDataBuffer extends DataBuffer
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the buffer holding one packed int per pixel */
+  private final IntBuffer buffer;
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * Constructor that takes the buffer to use.  The whole buffer (from
+   * index 0 to its capacity) is used as the data.
+   * @param buffer the buffer holding the ints
+   */
+  public IntBufferDataBuffer(IntBuffer buffer)
+  {
+    super(DataBuffer.TYPE_INT, buffer.capacity());
+    this.buffer = buffer;
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to get the buffer holding the ints
+   * @return the buffer (use absolute get and put on it)
+   */
+  public IntBuffer getBuffer() { return buffer; }
+
+  /**
+   * Method to get an element from the buffer
+   * @param bank the bank (there is only one)
+   * @param i the index of the element
+   * @return the element
+   */
+  public int getElem(int bank, int i)
+  {
+    return buffer.get(i);
+  }
+
+  /**
+   * Method to set an element in the buffer
+   * @param bank the bank (there is only one)
+   * @param i the index of the element
+   * @param value the new element
+   */
+  public void setElem(int bank, int i, int value)
+  {
+    buffer.put(i, value);
+  }
+
+  /**
+   * Method to make a packed int image (like TYPE_INT_ARGB or
+   * TYPE_INT_RGB) whose pixels are in a buffer in row-major order
+   * @param buffer the buffer holding width * height ints
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param hasAlpha true to use the alpha byte, false for an opaque image
+   * @return an image over the buffer
+   */
+  public static BufferedImage createImage(IntBuffer buffer, int width, int height,
+                                          boolean hasAlpha)
+  {
+    ColorModel colorModel;
+    int[] masks;
+    if (hasAlpha)
+    {
+      colorModel = ColorModel.getRGBdefault();
+      masks = new int[] { 0x00ff0000, 0x0000ff00, 0x000000ff, 0xff000000 };
+    }
+    else
+    {
+      colorModel = new DirectColorModel(24, 0x00ff0000, 0x0000ff00, 0x000000ff);
+      masks = new int[] { 0x00ff0000, 0x0000ff00, 0x000000ff };
+    }
+    WritableRaster raster = Raster.createPackedRaster(new IntBufferDataBuffer(buffer),
+                                                      width, height, width,
+                                                      masks, new Point(0, 0));
+    return new BufferedImage(colorModel, raster, false, new Hashtable<>());
+  }
+
+}
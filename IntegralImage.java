@@ -0,0 +1,286 @@
+/**
+ * Class that holds a summed-area table (integral image) of the red,
+ * green, and blue values of a picture, and optionally of their
+ * squares.  Once it is built the sum, mean, or variance of any
+ * rectangle of the picture can be found in constant time, which makes
+ * it a good base for filters that look at a box around each pixel
+ * (blur, enhance, local contrast, ...).
+ *
+ * Rectangles are given as [x0, x1) x [y0, y1) and are clipped to the
+ * picture, so only pixels inside the picture are counted.
+ *
+ * The table is much bigger than the picture: 12 bytes a pixel (24 for
+ * pictures over about 16 million pixels, which need long sums) plus
+ * another 24 if the squares are kept, where the picture itself is 4.
+ * It pays for itself when several filters look at boxes of the same
+ * picture; a single blur is cheaper with Picture.blur(int), which only
+ * keeps running sums for the rows it is working on.
+ */
+public class IntegralImage
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the index of the red channel */
+  public static final int RED = 0;
+
+  /** the index of the green channel */
+  public static final int GREEN = 1;
+
+  /** the index of the blue channel */
+  public static final int BLUE = 2;
+
+  /**
+   * the most pixels a picture can have for its sums to be kept in ints.
+   * Sums of up to this many values of 255 fit in 32 unsigned bits, so
+   * sums of rectangles come out right even though the table wraps.
+   */
+  private static final long MAX_INT_TABLE_PIXELS = 0xffffffffL / 255;
+
+  /** the width of the picture */
+  private final int width;
+
+  /** the height of the picture */
+  private final int height;
+
+  /** the sums for each channel as ints (or null if longs are used) */
+  private final int[][] intSums;
+
+  /** the sums for each channel as longs (or null if ints are used) */
+  private final long[][] longSums;
+
+  /** the sums of the squares for each channel (or null if not kept) */
+  private final long[][] squareSums;
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * Constructor that builds the sums of the red, green, and blue
+   * values of a picture
+   * @param picture the picture to build the sums of
+   */
+  public IntegralImage(SimplePicture picture)
+  {
+    this(picture, false);
+  }
+
+  /**
+   * Constructor that builds the sums of the red, green, and blue
+   * values of a picture and, if asked, the sums of their squares
+   * so variances can be found
+   * @param picture the picture to build the sums of
+   * @param withSquares true to also keep the sums of the squares
+   */
+  public IntegralImage(SimplePicture picture, boolean withSquares)
+  {
+    this.width = picture.getWidth();
+    this.height = picture.getHeight();
+    int size = (width + 1) * (height + 1);
+    boolean useInts = (long) width * height <= MAX_INT_TABLE_PIXELS;
+    int[] pixels = picture.getPixelBufferForReading();
+
+    if (useInts)
+    {
+      intSums = new int[3][size];
+      longSums = null;
+    }
+    else
+    {
+      intSums = null;
+      longSums = new long[3][size];
+    }
+    if (withSquares)
+      squareSums = new long[3][size];
+    else
+      squareSums = null;
+
+    FilterEngine engine = FilterEngine.getDefault();
+    int tableWidth = width + 1;
+
+    // first make each row of the table hold the sums along its row
+    engine.forEachRowStripe(width, height, (startRow, endRow) -> {
+      for (int y = startRow; y < endRow; y++)
+      {
+        int pixelIndex = y * width;
+        int tableIndex = (y + 1) * tableWidth + 1;
+        for (int channel = 0; channel < 3; channel++)
+        {
+          int shift = 16 - 8 * channel;
+          long sum = 0;
+          long squareSum = 0;
+          for (int x = 0; x < width; x++)
+          {
+            int value = (pixels[pixelIndex + x] >> shift) & 0xff;
+            sum += value;
+            if (useInts)
+              intSums[channel][tableIndex + x] = (int) sum;
+            else
+              longSums[channel][tableIndex + x] = sum;
+            if (withSquares)
+            {
+              squareSum += value * value;
+              squareSums[channel][tableIndex + x] = squareSum;
+            }
+          }
+        }
+      }
+    });
+
+    // then add each row to the one below it, splitting the columns
+    // (not the rows) between the threads since each row needs the last
+    engine.forEachColumnStripe(tableWidth, height, (startCol, endCol) -> {
+      for (int y = 2; y <= height; y++)
+      {
+        int index = y * tableWidth;
+        int above = index - tableWidth;
+        for (int channel = 0; channel < 3; channel++)
+        {
+          for (int x = startCol; x < endCol; x++)
+          {
+            if (useInts)
+              intSums[channel][index + x] += intSums[channel][above + x];
+            else
+              longSums[channel][index + x] += longSums[channel][above + x];
+            if (withSquares)
+              squareSums[channel][index + x] += squareSums[channel][above + x];
+          }
+        }
+      }
+    });
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to get the width of the picture
+   * @return the width of the picture
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the picture
+   * @return the height of the picture
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to check if the sums of the squares were kept
+   * @return true if variances can be found
+   */
+  public boolean hasSquares() { return squareSums != null; }
+
+  /**
+   * Method to get the number of pixels of a rectangle that are
+   * inside the picture
+   * @param x0 the left column of the rectangle
+   * @param y0 the top row of the rectangle
+   * @param x1 the column just after the right side of the rectangle
+   * @param y1 the row just below the bottom of the rectangle
+   * @return the number of pixels inside the picture (0 if none)
+   */
+  public int getCount(int x0, int y0, int x1, int y1)
+  {
+    int columns = Math.min(x1, width) - Math.max(x0, 0);
+    int rows = Math.min(y1, height) - Math.max(y0, 0);
+    if (columns <= 0 || rows <= 0)
+      return 0;
+    return columns * rows;
+  }
+
+  /**
+   * Method to get the sum of one channel over the part of a
+   * rectangle that is inside the picture
+   * @param channel RED, GREEN, or BLUE
+   * @param x0 the left column of the rectangle
+   * @param y0 the top row of the rectangle
+   * @param x1 the column just after the right side of the rectangle
+   * @param y1 the row just below the bottom of the rectangle
+   * @return the sum of the channel values (0 if no pixels are inside)
+   */
+  public long getSum(int channel, int x0, int y0, int x1, int y1)
+  {
+    x0 = Math.max(x0, 0);
+    y0 = Math.max(y0, 0);
+    x1 = Math.min(x1, width);
+    y1 = Math.min(y1, height);
+    if (x1 <= x0 || y1 <= y0)
+      return 0;
+
+    int tableWidth = width + 1;
+    int topLeft = y0 * tableWidth + x0;
+    int topRight = y0 * tableWidth + x1;
+    int bottomLeft = y1 * tableWidth + x0;
+    int bottomRight = y1 * tableWidth + x1;
+    if (intSums != null)
+    {
+      int[] sums = intSums[channel];
+      int sum = sums[bottomRight] - sums[bottomLeft] - sums[topRight] + sums[topLeft];
+      return sum & 0xffffffffL;
+    }
+    long[] sums = longSums[channel];
+    return sums[bottomRight] - sums[bottomLeft] - sums[topRight] + sums[topLeft];
+  }
+
+  /**
+   * Method to get the sum of the squares of one channel over the part
+   * of a rectangle that is inside the picture
+   * @param channel RED, GREEN, or BLUE
+   * @param x0 the left column of the rectangle
+   * @param y0 the top row of the rectangle
+   * @param x1 the column just after the right side of the rectangle
+   * @param y1 the row just below the bottom of the rectangle
+   * @return the sum of the squared channel values
+   * @throws IllegalStateException if the squares weren't kept
+   */
+  public long getSquareSum(int channel, int x0, int y0, int x1, int y1)
+  {
+    if (squareSums == null)
+      throw new IllegalStateException("the sums of the squares weren't kept");
+    x0 = Math.max(x0, 0);
+    y0 = Math.max(y0, 0);
+    x1 = Math.min(x1, width);
+    y1 = Math.min(y1, height);
+    if (x1 <= x0 || y1 <= y0)
+      return 0;
+
+    int tableWidth = width + 1;
+    long[] sums = squareSums[channel];
+    return sums[y1 * tableWidth + x1] - sums[y1 * tableWidth + x0]
+      - sums[y0 * tableWidth + x1] + sums[y0 * tableWidth + x0];
+  }
+
+  /**
+   * Method to get the mean of one channel over the part of a
+   * rectangle that is inside the picture
+   * @param channel RED, GREEN, or BLUE
+   * @param x0 the left column of the rectangle
+   * @param y0 the top row of the rectangle
+   * @param x1 the column just after the right side of the rectangle
+   * @param y1 the row just below the bottom of the rectangle
+   * @return the mean (NaN if no pixels are inside)
+   */
+  public double getMean(int channel, int x0, int y0, int x1, int y1)
+  {
+    return (double) getSum(channel, x0, y0, x1, y1) / getCount(x0, y0, x1, y1);
+  }
+
+  /**
+   * Method to get the variance of one channel over the part of a
+   * rectangle that is inside the picture
+   * @param channel RED, GREEN, or BLUE
+   * @param x0 the left column of the rectangle
+   * @param y0 the top row of the rectangle
+   * @param x1 the column just after the right side of the rectangle
+   * @param y1 the row just below the bottom of the rectangle
+   * @return the variance (NaN if no pixels are inside)
+   * @throws IllegalStateException if the squares weren't kept
+   */
+  public double getVariance(int channel, int x0, int y0, int x1, int y1)
+  {
+    int count = getCount(x0, y0, x1, y1);
+    double mean = (double) getSum(channel, x0, y0, x1, y1) / count;
+    double meanOfSquares = (double) getSquareSum(channel, x0, y0, x1, y1) / count;
+    return Math.max(0.0, meanOfSquares - mean * mean);
+  }
+
+}
@@ -0,0 +1,155 @@
+import java.nio.IntBuffer;
+
+/**
+ * The ways a picture can be sampled at a location that isn't exactly
+ * on a pixel, as happens when a picture is rotated or scaled.  Pixel
+ * centers are at whole number locations, so (2.0, 3.0) is exactly the
+ * pixel at column 2, row 3.  Locations outside the picture take the
+ * background color, so edges blend into the background.
+ */
+public enum Interpolation
+{
+  /** Use the closest pixel (fast, but edges look jagged) */
+  NEAREST {
+    public int sample(IntBuffer pixels, int width, int height,
+                      double x, double y, int background)
+    {
+      int col = (int) Math.floor(x + 0.5);
+      int row = (int) Math.floor(y + 0.5);
+      if (col < 0 || col >= width || row < 0 || row >= height)
+        return background;
+      return pixels.get(row * width + col);
+    }
+  },
+
+  /** Blend the closest 2 x 2 pixels by distance */
+  BILINEAR {
+    public int sample(IntBuffer pixels, int width, int height,
+                      double x, double y, int background)
+    {
+      int col = (int) Math.floor(x);
+      int row = (int) Math.floor(y);
+      if (col < -1 || col >= width || row < -1 || row >= height)
+        return background;
+      double fx = x - col;
+      double fy = y - row;
+      int topLeft = get(pixels, width, height, col, row, background);
+      int topRight = get(pixels, width, height, col + 1, row, background);
+      int bottomLeft = get(pixels, width, height, col, row + 1, background);
+      int bottomRight = get(pixels, width, height, col + 1, row + 1, background);
+      int value = 0xff000000;
+      for (int shift = 16; shift >= 0; shift -= 8)
+      {
+        double top = ((topLeft >> shift) & 0xff) * (1 - fx) + ((topRight >> shift) & 0xff) * fx;
+        double bottom = ((bottomLeft >> shift) & 0xff) * (1 - fx) + ((bottomRight >> shift) & 0xff) * fx;
+        value |= ((int) (top * (1 - fy) + bottom * fy + 0.5)) << shift;
+      }
+      return value;
+    }
+  },
+
+  /** Blend the closest 4 x 4 pixels with a Catmull-Rom cubic (sharpest) */
+  BICUBIC {
+    public int sample(IntBuffer pixels, int width, int height,
+                      double x, double y, int background)
+    {
+      int col = (int) Math.floor(x);
+      int row = (int) Math.floor(y);
+      if (col < -2 || col > width || row < -2 || row > height)
+        return background;
+      double fx = x - col;
+      double fy = y - row;
+      double xWeight0 = cubic(fx + 1);
+      double xWeight1 = cubic(fx);
+      double xWeight2 = cubic(1 - fx);
+      double xWeight3 = cubic(2 - fx);
+      double red = 0;
+      double green = 0;
+      double blue = 0;
+      for (int j = 0; j < 4; j++)
+      {
+        int r = row - 1 + j;
+        int p0 = get(pixels, width, height, col - 1, r, background);
+        int p1 = get(pixels, width, height, col, r, background);
+        int p2 = get(pixels, width, height, col + 1, r, background);
+        int p3 = get(pixels, width, height, col + 2, r, background);
+        double yWeight = cubic(fy + 1 - j);
+        red += yWeight * (((p0 >> 16) & 0xff) * xWeight0 + ((p1 >> 16) & 0xff) * xWeight1
+                          + ((p2 >> 16) & 0xff) * xWeight2 + ((p3 >> 16) & 0xff) * xWeight3);
+        green += yWeight * (((p0 >> 8) & 0xff) * xWeight0 + ((p1 >> 8) & 0xff) * xWeight1
+                            + ((p2 >> 8) & 0xff) * xWeight2 + ((p3 >> 8) & 0xff) * xWeight3);
+        blue += yWeight * ((p0 & 0xff) * xWeight0 + (p1 & 0xff) * xWeight1
+                           + (p2 & 0xff) * xWeight2 + (p3 & 0xff) * xWeight3);
+      }
+      return Pixel.makeRGB(Pixel.correctValue((int) Math.round(red)),
+                           Pixel.correctValue((int) Math.round(green)),
+                           Pixel.correctValue((int) Math.round(blue)));
+    }
+  };
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to sample a packed picture at a location
+   * @param pixels the packed pixels (row-major, y * width + x)
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param x the x location to sample
+   * @param y the y location to sample
+   * @param background the color to use outside the picture
+   * @return the color at the location (alpha, red, green, blue)
+   */
+  public int sample(int[] pixels, int width, int height,
+                    double x, double y, int background)
+  {
+    return sample(IntBuffer.wrap(pixels), width, height, x, y, background);
+  }
+
+  /**
+   * Method to sample packed pixels kept in a buffer (like the pixels of
+   * an OffHeapPicture) at a location
+   * @param pixels the packed pixels (row-major, y * width + x)
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param x the x location to sample
+   * @param y the y location to sample
+   * @param background the color to use outside the picture
+   * @return the color at the location (alpha, red, green, blue)
+   */
+  public abstract int sample(IntBuffer pixels, int width, int height,
+                             double x, double y, int background);
+
+  /**
+   * Method to get a pixel or the background if it's outside the picture
+   * @param pixels the packed pixels
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param col the column of the pixel
+   * @param row the row of the pixel
+   * @param background the color to use outside the picture
+   * @return the pixel value
+   */
+  private static int get(IntBuffer pixels, int width, int height,
+                         int col, int row, int background)
+  {
+    if (col < 0 || col >= width || row < 0 || row >= height)
+      return background;
+    return pixels.get(row * width + col);
+  }
+
+  /**
+   * Method to get the Catmull-Rom weight for a pixel at a distance
+   * from the location being sampled
+   * @param distance how far the pixel is from the location
+   * @return the weight (0 for pixels 2 or more away)
+   */
+  private static double cubic(double distance)
+  {
+    double d = Math.abs(distance);
+    if (d < 1)
+      return (1.5 * d - 2.5) * d * d + 1;
+    if (d < 2)
+      return ((-0.5 * d + 2.5) * d - 4) * d + 2;
+    return 0;
+  }
+}
@@ -0,0 +1,762 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Class that represents a picture whose pixels are kept outside of the
+ * Java heap in a direct buffer.  Big pictures kept this way don't make
+ * the garbage collector work harder or need a big heap.  The pixels are
+ * packed ints in row-major order (alpha, red, green, blue) like the
+ * pixel buffer of a SimplePicture.
+ *
+ * An off-heap picture should be closed when it is no longer needed,
+ * and can be used in a try-with-resources statement.  Using it after
+ * that throws an IllegalStateException.  Closing gives the memory back
+ * right away unless the buffer was handed out (by getPixelBuffer,
+ * getBufferedImage, getImage, or show), since something may still be
+ * using it then; in that case the memory is given back by the garbage
+ * collector once nothing uses the buffer any more.  Don't close a
+ * picture while a filter is running on it on another thread.
+ *
+ * Point filters (see PixelOperation, ColorTransform, and GrayscaleMode)
+ * run on the pixels in place with apply.  The filters that Picture runs
+ * in stripes of rows or in tiles (blur, enhance, stairStep, liquify,
+ * wavy, edgeDetectionBelow, and rotate) run on the off-heap pixels too,
+ * using the same code, and make a new off-heap picture.  For any other
+ * filter make a Picture with toPicture, filter it, and copy it back
+ * with copyPicture.
+ */
+public class OffHeapPicture implements DigitalPicture, AutoCloseable
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the file name associated with the picture */
+  private String fileName = "None";
+
+  /** the title of the picture */
+  private String title = "None";
+
+  /** the width of the picture */
+  private int width;
+
+  /** the height of the picture */
+  private int height;
+
+  /** true if the alpha values are used */
+  private boolean hasAlpha;
+
+  /** the direct buffer holding the pixels (or null when closed) */
+  private ByteBuffer memory;
+
+  /** the pixels as ints (or null when closed) */
+  private IntBuffer pixels;
+
+  /** an image that shows the pixels, made when it is first asked for */
+  private BufferedImage image;
+
+  /** true if the buffer or an image over it was handed out */
+  private boolean handedOut;
+
+  /** frame used to display the picture */
+  private PictureFrame pictureFrame;
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * Constructor that makes a white picture of the given size
+   * @param width the width of the picture
+   * @param height the height of the picture
+   */
+  public OffHeapPicture(int width, int height)
+  {
+    allocate(width, height, false);
+    setAllPixelsToAColor(Color.white);
+  }
+
+  /**
+   * Constructor that copies the pixels of a picture
+   * @param picture the picture to copy
+   */
+  public OffHeapPicture(SimplePicture picture)
+  {
+    int[] sourcePixels = picture.getPixelBufferForReading();
+    allocate(picture.getWidth(), picture.getHeight(),
+             picture.getBufferedImageForReading().getColorModel().hasAlpha());
+    pixels.put(0, sourcePixels);
+    if (picture.getFileName() != null)
+      fileName = picture.getFileName();
+    if (picture.getTitle() != null)
+      title = picture.getTitle();
+  }
+
+  /**
+   * Constructor that reads a picture from a file.  The file is decoded
+   * into the off-heap buffer a band of rows at a time if its reader
+   * can do that (see loadOrFail).
+   * @param fileName the name of the file to read
+   * @throws IOException if the file can't be read
+   */
+  public OffHeapPicture(String fileName) throws IOException
+  {
+    loadOrFail(fileName);
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to allocate the buffer for a picture of the given size in
+   * place of the old one (which is freed if it wasn't handed out)
+   */
+  private void allocate(int width, int height, boolean hasAlpha)
+  {
+    if (width <= 0 || height <= 0)
+      throw new IllegalArgumentException("bad size: " + width + " by " + height);
+    long bytes = 4L * width * height;
+    if (bytes > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("a picture can have at most " +
+                                         Integer.MAX_VALUE / 4 + " pixels");
+    ByteBuffer newMemory = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    release();
+    memory = newMemory;
+    pixels = memory.asIntBuffer();
+    this.width = width;
+    this.height = height;
+    this.hasAlpha = hasAlpha;
+  }
+
+  /**
+   * Method to drop the buffer, giving its memory back right away if it
+   * was never handed out
+   */
+  private void release()
+  {
+    ByteBuffer oldMemory = memory;
+    boolean canFree = !handedOut;
+    memory = null;
+    pixels = null;
+    image = null;
+    handedOut = false;
+    if (oldMemory != null && canFree)
+      free(oldMemory);
+  }
+
+  /**
+   * Method to give back the memory of a direct buffer right away if
+   * the Java runtime allows it.  Otherwise the memory is given back
+   * when the buffer is garbage collected.  Nothing may use the buffer
+   * after this.
+   */
+  private static void free(ByteBuffer buffer)
+  {
+    try
+    {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      invokeCleaner.invoke(field.get(null), buffer);
+    }
+    catch (ReflectiveOperationException | RuntimeException ex)
+    {
+      // leave it to the garbage collector
+    }
+  }
+
+  /**
+   * Method to check that the picture hasn't been closed
+   */
+  private void checkOpen()
+  {
+    if (pixels == null)
+      throw new IllegalStateException("the picture has been closed");
+  }
+
+  /**
+   * Method to give back the memory for the pixels.  The picture can't
+   * be used after it is closed.  If the buffer was handed out the
+   * memory is given back when the buffer is garbage collected instead.
+   */
+  public void close()
+  {
+    release();
+  }
+
+  /**
+   * Method to check if the picture has been closed
+   * @return true if the picture has been closed
+   */
+  public boolean isClosed() { return pixels == null; }
+
+  /**
+   * Method to check if the picture uses its alpha values
+   * @return true if the alpha values are used
+   */
+  public boolean hasAlpha() { return hasAlpha; }
+
+  /**
+   * Method to get the buffer holding the pixels.  There is one int per
+   * pixel in row-major order (index y * width + x).  Use absolute get
+   * and put so several threads can work on different pixels.  For
+   * opaque pictures the alpha byte is ignored.  Once the buffer has
+   * been handed out close leaves freeing it to the garbage collector.
+   * @return the pixel buffer
+   */
+  public IntBuffer getPixelBuffer()
+  {
+    checkOpen();
+    handedOut = true;
+    return pixels;
+  }
+
+  /**
+   * Method to get the buffer holding the pixels for a filter that is
+   * done with it when it returns.  Unlike getPixelBuffer this doesn't
+   * keep close from freeing the memory, so the buffer must not be kept.
+   * @return the pixel buffer
+   */
+  IntBuffer getPixelBufferForFilter()
+  {
+    checkOpen();
+    return pixels;
+  }
+
+  /**
+   * Method to get the file name associated with the picture
+   * @return the file name
+   */
+  public String getFileName() { return fileName; }
+
+  /**
+   * Method to get the title of the picture
+   * @return the title
+   */
+  public String getTitle() { return title; }
+
+  /**
+   * Method to set the title of the picture
+   * @param title the new title
+   */
+  public void setTitle(String title)
+  {
+    this.title = title;
+    if (pictureFrame != null)
+      pictureFrame.setTitle(title);
+  }
+
+  /**
+   * Method to get the width of the picture in pixels
+   * @return the width
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the picture in pixels
+   * @return the height
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to get an image that shows the pixels
+   * @return the image (see getBufferedImage)
+   */
+  public Image getImage() { return getBufferedImage(); }
+
+  /**
+   * Method to get an image that shows the pixels.  The image reads
+   * and writes the off-heap buffer, so drawing on it changes the
+   * picture (but is slower than drawing on a SimplePicture).  Once the
+   * image has been handed out close leaves freeing the buffer to the
+   * garbage collector.
+   * @return an image over the pixels
+   */
+  public BufferedImage getBufferedImage()
+  {
+    BufferedImage result = getImageForFilter();
+    handedOut = true;
+    return result;
+  }
+
+  /**
+   * Method to get the image over the pixels for use inside this class
+   * without handing it out
+   */
+  private BufferedImage getImageForFilter()
+  {
+    checkOpen();
+    if (image == null)
+      image = IntBufferDataBuffer.createImage(pixels, width, height, hasAlpha);
+    return image;
+  }
+
+  /**
+   * Method to get the value of a pixel as an int
+   * @param x the x coordinate of the pixel
+   * @param y the y coordinate of the pixel
+   * @return the pixel value (alpha, red, green, blue)
+   */
+  public int getBasicPixel(int x, int y)
+  {
+    checkOpen();
+    if (x < 0 || x >= width || y < 0 || y >= height)
+      throw new IndexOutOfBoundsException("(" + x + "," + y + ") is outside the picture");
+    int value = pixels.get(y * width + x);
+    if (!hasAlpha)
+      value = value | 0xff000000;
+    return value;
+  }
+
+  /**
+   * Method to set the value of a pixel from an int
+   * @param x the x coordinate of the pixel
+   * @param y the y coordinate of the pixel
+   * @param rgb the new pixel value (alpha, red, green, blue)
+   */
+  public void setBasicPixel(int x, int y, int rgb)
+  {
+    checkOpen();
+    if (x < 0 || x >= width || y < 0 || y >= height)
+      throw new IndexOutOfBoundsException("(" + x + "," + y + ") is outside the picture");
+    pixels.put(y * width + x, rgb);
+  }
+
+  /**
+   * Method to get a pixel object for a location
+   * @param x the x location of the pixel
+   * @param y the y location of the pixel
+   * @return a Pixel object for this location
+   */
+  public Pixel getPixel(int x, int y)
+  {
+    return new Pixel(this,x,y);
+  }
+
+  /**
+   * Method to get a one-dimensional array of Pixels in row-major order
+   * @return the array of Pixel objects
+   */
+  public Pixel[] getPixels()
+  {
+    Pixel[] pixelArray = new Pixel[width * height];
+    for (int row = 0; row < height; row++)
+      for (int col = 0; col < width; col++)
+        pixelArray[row * width + col] = new Pixel(this,col,row);
+    return pixelArray;
+  }
+
+  /**
+   * Method to get a two-dimensional array of Pixels in row-major order
+   * @return the array of Pixel objects
+   */
+  public Pixel[][] getPixels2D()
+  {
+    Pixel[][] pixelArray = new Pixel[height][width];
+    for (int row = 0; row < height; row++)
+      for (int col = 0; col < width; col++)
+        pixelArray[row][col] = new Pixel(this,col,row);
+    return pixelArray;
+  }
+
+  /**
+   * Method to get a pixel cursor for this picture
+   * @return a pixel cursor positioned before the first pixel
+   */
+  public PixelCursor getPixelCursor()
+  {
+    checkOpen();
+    return new PixelCursor(this);
+  }
+
+  /**
+   * Method to set the color of every pixel, keeping each pixel's alpha
+   * @param color the color to set to
+   */
+  public void setAllPixelsToAColor(Color color)
+  {
+    int rgb = color.getRGB() & 0x00ffffff;
+    apply((value, x, y) -> (value & 0xff000000) | rgb);
+  }
+
+  /**
+   * Method to change every pixel with a point operation
+   * @param operation the operation to do on each pixel
+   */
+  public void apply(PixelOperation operation)
+  {
+    checkOpen();
+    FilterEngine.getDefault().apply(this, operation);
+  }
+
+  /**
+   * Method to blur the picture like Picture.blur, working on the
+   * off-heap pixels
+   * @param size the blur size, greater is more blur
+   * @return a new off-heap picture that is blurred
+   */
+  public OffHeapPicture blur(int size)
+  {
+    return boxFilter(size, false);
+  }
+
+  /**
+   * Method to enhance the picture like Picture.enhance, working on the
+   * off-heap pixels
+   * @param size larger means more area to average around each pixel
+   * @return a new off-heap picture that is enhanced
+   */
+  public OffHeapPicture enhance(int size)
+  {
+    return boxFilter(size, true);
+  }
+
+  /**
+   * Method to blur or enhance the picture in stripes of rows
+   */
+  private OffHeapPicture boxFilter(int size, boolean enhance)
+  {
+    checkOpen();
+    OffHeapPicture result = new OffHeapPicture(width, height);
+    FilterEngine.getDefault().forEachRowStripe(width, height,
+      Picture.boxFilterTask(pixels, result.pixels, width, height, size, enhance));
+    return result;
+  }
+
+  /**
+   * Method to shift the rows in steps like Picture.stairStep, working
+   * on the off-heap pixels
+   * @param shiftCount the number of pixels to shift to the right
+   * @param steps the number of steps
+   * @return a new off-heap picture with the rows shifted
+   */
+  public OffHeapPicture stairStep(int shiftCount, int steps)
+  {
+    return shiftRows(Picture.stairStepShifts(height, shiftCount, steps));
+  }
+
+  /**
+   * Method to shift the rows along a bell curve like Picture.liquify,
+   * working on the off-heap pixels
+   * @param maxHeight the most pixels a row is shifted
+   * @return a new off-heap picture with the rows shifted
+   */
+  public OffHeapPicture liquify(int maxHeight)
+  {
+    return shiftRows(Picture.liquifyShifts(height, maxHeight));
+  }
+
+  /**
+   * Method to shift the rows along a sine wave like Picture.wavy,
+   * working on the off-heap pixels
+   * @param amplitude the most pixels a row is shifted
+   * @return a new off-heap picture with the rows shifted
+   */
+  public OffHeapPicture wavy(int amplitude)
+  {
+    return shiftRows(Picture.wavyShifts(height, amplitude));
+  }
+
+  /**
+   * Method to shift each row by its own amount a tile at a time
+   */
+  private OffHeapPicture shiftRows(int[] shifts)
+  {
+    checkOpen();
+    OffHeapPicture result = new OffHeapPicture(width, height);
+    FilterEngine.getDefault().forEachTile(width, height,
+      Picture.shiftRowsTask(pixels, result.pixels, width, shifts));
+    return result;
+  }
+
+  /**
+   * Method to find the edges like Picture.edgeDetectionBelow, working
+   * on the off-heap pixels
+   * @param threshold how far apart the colors of a pixel and the one
+   * above it must be for an edge
+   * @return a new off-heap picture with the edges in black on white
+   */
+  public OffHeapPicture edgeDetectionBelow(int threshold)
+  {
+    checkOpen();
+    OffHeapPicture result = new OffHeapPicture(width, height);
+    FilterEngine.getDefault().forEachTile(width, height,
+      Picture.edgeDetectionBelowTask(pixels, result.pixels, width, threshold));
+    return result;
+  }
+
+  /**
+   * Method to rotate the picture around its center like
+   * Picture.rotate, working on the off-heap pixels
+   * @param degrees the angle in degrees
+   * @return a new off-heap picture that is rotated
+   */
+  public OffHeapPicture rotate(double degrees)
+  {
+    return rotate(degrees, Interpolation.NEAREST);
+  }
+
+  /**
+   * Method to rotate the picture around its center like
+   * Picture.rotate, working on the off-heap pixels
+   * @param degrees the angle in degrees
+   * @param interpolation how to sample between pixels
+   * @return a new off-heap picture that is rotated
+   */
+  public OffHeapPicture rotate(double degrees, Interpolation interpolation)
+  {
+    checkOpen();
+    double angle = Math.toRadians(degrees);
+    Rectangle2D bounds = Picture.rotatedBounds(width, height, angle);
+    OffHeapPicture result = new OffHeapPicture((int) Math.ceil(bounds.getWidth()),
+                                               (int) Math.ceil(bounds.getHeight()));
+    FilterEngine.getDefault().forEachTile(result.width, result.height,
+      Picture.rotateTask(pixels, width, height, result.pixels, result.width, bounds, angle,
+                         interpolation));
+    return result;
+  }
+
+  /**
+   * Method to copy the colors of a picture into this one, keeping
+   * this picture's alpha.  Only the part where they overlap is copied.
+   * @param sourcePicture the picture to copy from
+   */
+  public void copyPicture(SimplePicture sourcePicture)
+  {
+    checkOpen();
+    int[] sourcePixels = sourcePicture.getPixelBufferForReading();
+    int sourceWidth = sourcePicture.getWidth();
+    int sourceHeight = sourcePicture.getHeight();
+    apply((value, x, y) -> {
+      if (x >= sourceWidth || y >= sourceHeight)
+        return value;
+      return (value & 0xff000000) | (sourcePixels[y * sourceWidth + x] & 0x00ffffff);
+    });
+  }
+
+  /**
+   * Method to copy the pixels into a new (on-heap) Picture
+   * @return a new picture with the same pixels
+   */
+  public Picture toPicture()
+  {
+    checkOpen();
+    int type = BufferedImage.TYPE_INT_RGB;
+    if (hasAlpha)
+      type = BufferedImage.TYPE_INT_ARGB;
+    Picture picture = new Picture(new BufferedImage(width, height, type));
+    pixels.get(0, picture.getPixelBuffer());
+    picture.setTitle(title);
+    return picture;
+  }
+
+  /**
+   * Method to draw an image onto the picture at 0,0
+   * @param image the image to draw
+   */
+  public void load(Image image)
+  {
+    Graphics2D graphics2d = getImageForFilter().createGraphics();
+    graphics2d.drawImage(image,0,0,null);
+    graphics2d.dispose();
+    show();
+  }
+
+  /**
+   * Method to read a picture from a file, or print why it couldn't be
+   * read
+   * @param fileName the name of the file to read
+   * @return true if the file was read
+   */
+  public boolean load(String fileName)
+  {
+    try
+    {
+      loadOrFail(fileName);
+      return true;
+    }
+    catch (IOException ex)
+    {
+      System.out.println("There was an error trying to open " + fileName);
+      return false;
+    }
+  }
+
+  /**
+   * Method to read a picture from a file.  Formats whose readers can
+   * decode a band of rows on its own (BMP and TIFF) are decoded a band
+   * at a time so only about one band is ever on the heap.  Other
+   * formats (like PNG and JPEG) would decode the whole image again for
+   * each band, so they are decoded once in one piece (see
+   * StreamingFilter.readImage) and copied in a row at a time.
+   * @param fileName the name of the file to read
+   * @throws IOException if the file can't be read
+   */
+  public void loadOrFail(String fileName) throws IOException
+  {
+    File file = SimplePicture.findFile(fileName);
+
+    ImageInputStream input = ImageIO.createImageInputStream(file);
+    if (input == null)
+      throw new IOException(fileName + " could not be opened");
+    try
+    {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext())
+        throw new IOException(fileName + " isn't in a supported image format");
+      ImageReader reader = readers.next();
+      try
+      {
+        reader.setInput(input, false, true);
+        read(reader);
+      }
+      finally
+      {
+        reader.dispose();
+      }
+    }
+    finally
+    {
+      input.close();
+    }
+    this.fileName = fileName;
+    if (title == null || title.equals("None"))
+      setTitle(fileName);
+  }
+
+  /**
+   * Method to decode the first image of a reader into the buffer
+   */
+  private void read(ImageReader reader) throws IOException
+  {
+    allocate(reader.getWidth(0), reader.getHeight(0), StreamingFilter.hasAlpha(reader));
+    if (!StreamingFilter.canReadBands(reader))
+    {
+      readWhole(reader);
+      return;
+    }
+    int bandHeight = Math.min(height, Math.max(1, StreamingFilter.DEFAULT_BAND_PIXELS / width));
+    int type = BufferedImage.TYPE_INT_RGB;
+    if (hasAlpha)
+      type = BufferedImage.TYPE_INT_ARGB;
+    BufferedImage band = new BufferedImage(width, bandHeight, type);
+    int[] bandPixels = ((DataBufferInt) band.getRaster().getDataBuffer()).getData();
+
+    for (int top = 0; top < height; top += bandHeight)
+    {
+      int rows = Math.min(bandHeight, height - top);
+      StreamingFilter.readBand(reader, top, rows, band);
+      pixels.put(top * width, bandPixels, 0, rows * width);
+    }
+  }
+
+  /**
+   * Method to decode the first image of a reader in one piece (in the
+   * reader's own type, which is usually the smallest) and copy it into
+   * the buffer a row at a time
+   */
+  private void readWhole(ImageReader reader) throws IOException
+  {
+    BufferedImage decoded = StreamingFilter.readImage(reader, false);
+    if (!StreamingFilter.canHoldAnyColor(decoded))
+      decoded = SimplePicture.toPackedImage(decoded);
+    if (decoded.getRaster().getDataBuffer() instanceof DataBufferInt)
+    {
+      pixels.put(0, ((DataBufferInt) decoded.getRaster().getDataBuffer()).getData(),
+                 0, width * height);
+      return;
+    }
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++)
+    {
+      decoded.getRGB(0, y, width, 1, row, 0, width);
+      pixels.put(y * width, row);
+    }
+  }
+
+  /**
+   * Method to write the picture to a file, or print why it couldn't be
+   * written
+   * @param fileName the name of the file to write
+   * @return true if the file was written
+   */
+  public boolean write(String fileName)
+  {
+    try
+    {
+      writeOrFail(fileName);
+      return true;
+    }
+    catch (IOException ex)
+    {
+      System.out.println("There was an error trying to write " + fileName);
+      return false;
+    }
+  }
+
+  /**
+   * Method to write the picture to a file.  The format comes from the
+   * extension of the file name (use .argb for a raw picture file).
+   * @param fileName the name of the file to write
+   * @throws IOException if the file can't be written
+   */
+  public void writeOrFail(String fileName) throws IOException
+  {
+    checkOpen();
+    File file = new File(fileName);
+    if (file.getParentFile() == null)
+      file = new File(FileChooser.getMediaPath(fileName));
+    if (RawPictureFile.isRawFileName(fileName))
+    {
+      RawPictureFile.write(pixels, width, height, hasAlpha, file);
+      return;
+    }
+    int posDot = fileName.lastIndexOf('.');
+    if (posDot < 0)
+      throw new IOException(fileName + " has no extension to pick a format from");
+    if (!ImageIO.write(getImageForFilter(), fileName.substring(posDot + 1), file))
+      throw new IOException("there is no image writer for " + fileName);
+  }
+
+  /**
+   * Method to show the picture in a picture frame
+   */
+  public void show()
+  {
+    if (pictureFrame != null)
+      pictureFrame.updateImageAndShowIt();
+    else
+      pictureFrame = new PictureFrame(this);
+  }
+
+  /**
+   * Method to explore an (on-heap) copy of the picture
+   */
+  public void explore()
+  {
+    new PictureExplorer(toPicture());
+  }
+
+  /**
+   * Method to return a string with information about this picture
+   * @return a string with information about the picture
+   */
+  public String toString()
+  {
+    return "Off-heap Picture, filename " + fileName +
+      " height " + height + " width " + width;
+  }
+
+}
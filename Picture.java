@@ -2,8 +2,12 @@ import java.awt.*;
 import java.awt.font.*;
 import java.awt.geom.*;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.List; // resolves problem with java.awt.List and java.util.List
 
 /**
@@ -15,6 +19,38 @@ import java.util.List; // resolves problem with java.awt.List and java.util.List
  * @since February 3rd, 2025
  */
 public class Picture extends SimplePicture {
+  ///////////////////// point operations //////////////////////////////
+
+  /** Sets the blue to 0 */
+  static final ColorTransform ZERO_BLUE = ColorTransform.zeroBlue();
+
+  /** Sets the red and green to 0 */
+  static final ColorTransform KEEP_ONLY_BLUE = ColorTransform.keepOnlyBlue();
+
+  /** Negates the red, green and blue */
+  static final ColorTransform NEGATE = ColorTransform.negate();
+
+  /** Adds 25 to the red, green and blue (used by the watermark) */
+  static final ColorTransform BRIGHTEN_25 = ColorTransform.brighten(25);
+
+  /** Sets the red, green and blue to their average */
+  static final PixelOperation GRAYSCALE = GrayscaleMode.AVERAGE;
+
+  /** Sets the blue to 255 where blue is the strongest color */
+  static final PixelOperation FIX_UNDERWATER = (value, x, y) -> {
+    int blue = Pixel.getBlue(value);
+    if (blue > Pixel.getGreen(value) && blue > Pixel.getRed(value))
+      return Pixel.withBlue(value, 255);
+    return value;
+  };
+
+  /** Brightens every other 40x40 square by 25 */
+  static final PixelOperation WATERMARK = (value, x, y) -> {
+    if ((y / 40 + x / 40) % 2 != 0)
+      return value;
+    return BRIGHTEN_25.apply(value);
+  };
+
   ///////////////////// constructors //////////////////////////////////
 
   /**
@@ -69,6 +105,18 @@ public class Picture extends SimplePicture {
     super(image);
   }
 
+  /**
+   * Constructor that reads the picture from a file that was already
+   * found (see SimplePicture.loadPicture)
+   * 
+   * @param file     the file to read
+   * @param fileName the file name the file was found from
+   * @throws IOException if the file can't be read
+   */
+  Picture(File file, String fileName) throws IOException {
+    super(file, fileName);
+  }
+
   ////////////////////// methods ///////////////////////////////////////
 
   /**
@@ -87,74 +135,56 @@ public class Picture extends SimplePicture {
 
   /** Method to set the blue to 0 */
   public void zeroBlue() {
-    Pixel[][] pixels = this.getPixels2D();
-    for (Pixel[] rowArray : pixels) {
-      for (Pixel pixelObj : rowArray) {
-        pixelObj.setBlue(0);
-      }
-    }
+    FilterEngine.getDefault().apply(this, ZERO_BLUE);
   }
 
   /** Method to set the red and green to 0 */
   public void keepOnlyBlue() {
-    Pixel[][] pixels = this.getPixels2D();
-    for (Pixel[] rowArray : pixels) {
-      for (Pixel pixelObj : rowArray) {
-        pixelObj.setRed(0);
-        pixelObj.setGreen(0);
-      }
-    }
+    FilterEngine.getDefault().apply(this, KEEP_ONLY_BLUE);
   }
 
   /** Method to negate all colors */
   public void negate() {
-    Pixel[][] pixels = this.getPixels2D();
-    for (Pixel[] rowArray : pixels) {
-      for (Pixel pixelObj : rowArray) {
-        pixelObj.setRed(255 - pixelObj.getRed());
-        pixelObj.setGreen(255 - pixelObj.getGreen());
-        pixelObj.setBlue(255 - pixelObj.getBlue());
-      }
-    }
+    FilterEngine.getDefault().apply(this, NEGATE);
   }
 
-  /** Method to make grayscale */
+  /**
+   * Method to make grayscale. Each pixel gets the average of its
+   * original red, green, and blue in all three colors.
+   */
   public void grayscale() {
-    Pixel[][] pixels = this.getPixels2D();
-    for (Pixel[] rowArray : pixels) {
-      for (Pixel pixelObj : rowArray) {
-        pixelObj.setRed((pixelObj.getRed() + pixelObj.getBlue() + pixelObj.getGreen()) / 3);
-        pixelObj.setGreen((pixelObj.getRed() + pixelObj.getBlue() + pixelObj.getGreen()) / 3);
-        pixelObj.setBlue((pixelObj.getRed() + pixelObj.getBlue() + pixelObj.getGreen()) / 3);
-      }
-    }
+    FilterEngine.getDefault().apply(this, GRAYSCALE);
+  }
+
+  /**
+   * Method to make grayscale using the passed way of weighting the
+   * colors (a plain average or the Rec. 601 or Rec. 709 luma).
+   * 
+   * @param mode how to turn each color into a gray
+   */
+  public void grayscale(GrayscaleMode mode) {
+    FilterEngine.getDefault().apply(this, mode);
   }
 
   /** Method to modify the pixel colors to make the fish easier to see */
   public void fixUnderwater() {
-    Pixel[][] pixels = this.getPixels2D();
-    for (Pixel[] rowArray : pixels) {
-      for (Pixel pixelObj : rowArray) {
-        if (pixelObj.getBlue() > pixelObj.getGreen()
-            && pixelObj.getBlue() > pixelObj.getRed())
-          pixelObj.setBlue(255);
-      }
-    }
+    FilterEngine.getDefault().apply(this, FIX_UNDERWATER);
   }
 
   /** Method to add watermark to image */
   public void addWatermark() {
-    Pixel[][] pixels = this.getPixels2D();
-    for (int i = 0; i < pixels.length; i++) {
-      for (int j = 0; j < pixels[i].length; j++) {
-        Pixel pixelObj = pixels[i][j];
-        if ((i / 40 + j / 40) % 2 == 0) {
-          pixelObj.setRed(pixelObj.getRed() + 25);
-          pixelObj.setGreen(pixelObj.getGreen() + 25);
-          pixelObj.setBlue(pixelObj.getBlue() + 25);
-        }
-      }
-    }
+    FilterEngine.getDefault().apply(this, WATERMARK);
+  }
+
+  /**
+   * Method to start a chain of filters on this picture. Point filters
+   * next to each other in the chain are done in one pass over the
+   * pixels.
+   * 
+   * @return a pipeline that runs on this picture
+   */
+  public FilterPipeline pipeline() {
+    return new FilterPipeline(this);
   }
 
   /**
@@ -163,13 +193,13 @@ public class Picture extends SimplePicture {
    * @param size Side length of square area to pixelate.
    */
   public void pixelate(int size) {
-    Pixel[][] pixels = this.getPixels2D();
-    int height = pixels.length;
-    int width = pixels[0].length;
+    PixelCursor pixel = this.getPixelCursor();
+    int height = pixel.getHeight();
+    int width = pixel.getWidth();
 
     for (int row = 0; row < height; row += size) {
       for (int col = 0; col < width; col += size) {
-        pixelateBlock(row, col, size);
+        pixelateBlock(pixel, row, col, size);
       }
     }
   }
@@ -177,21 +207,22 @@ public class Picture extends SimplePicture {
   /**
    * Helper method to pixelate
    * 
-   * @param starting row, starting column, size of grid to pixelate
+   * @param pixel cursor over this picture, starting row, starting column,
+   *              size of grid to pixelate
    */
-  private void pixelateBlock(int startRow, int startCol, int size) {
-    Pixel[][] pixels = this.getPixels2D();
-    int height = pixels.length;
-    int width = pixels[0].length;
+  private void pixelateBlock(PixelCursor pixel, int startRow, int startCol, int size) {
+    int height = pixel.getHeight();
+    int width = pixel.getWidth();
 
     int redSum = 0, greenSum = 0, blueSum = 0;
     int count = 0;
 
     for (int row = startRow; row < startRow + size && row < height; row++) {
       for (int col = startCol; col < startCol + size && col < width; col++) {
-        redSum += pixels[row][col].getRed();
-        greenSum += pixels[row][col].getGreen();
-        blueSum += pixels[row][col].getBlue();
+        pixel.moveTo(col, row);
+        redSum += pixel.getRed();
+        greenSum += pixel.getGreen();
+        blueSum += pixel.getBlue();
         count++;
       }
     }
@@ -205,45 +236,59 @@ public class Picture extends SimplePicture {
 
     for (int row = startRow; row < startRow + size && row < height; row++) {
       for (int col = startCol; col < startCol + size && col < width; col++) {
-        pixels[row][col].setRed(avgRed);
-        pixels[row][col].setGreen(avgGreen);
-        pixels[row][col].setBlue(avgBlue);
+        pixel.moveTo(col, row).setRGB(avgRed, avgGreen, avgBlue);
       }
     }
   }
 
   /**
-   * Method that blurs the picture
+   * Method that blurs the picture. Each pixel becomes the average of
+   * the pixels in a size x size box around it (rows and columns from
+   * size / 2 before it up to, but not including, size / 2 after it),
+   * using only the part of the box that is inside the picture.
+   * 
+   * The box sums are kept as running sums, first along each row and
+   * then down each column, so the time doesn't depend on size.
    * 
    * @param size Blur size, greater is more blur
    * @return Blurred picture
    */
   public Picture blur(int size) {
-    Pixel[][] pixels = this.getPixels2D();
-    Picture result = new Picture(pixels.length, pixels[0].length);
-    Pixel[][] resultPixels = result.getPixels2D();
-
-    for (int i = 0; i < pixels.length; i++) {
-      for (int j = 0; j < pixels[0].length; j++) {
-        double avgRed = 0;
-        double avgGreen = 0;
-        double avgBlue = 0;
-        int counter = 0;
-        for (int a = i - size / 2; a < i + size / 2; a++) {
-          for (int b = j - size / 2; b < j + size / 2; b++) {
-            if ((a >= 0 && a < pixels.length) && (b >= 0 && b < pixels[0].length)) {
-              avgRed += pixels[a][b].getRed();
-              avgGreen += pixels[a][b].getGreen();
-              avgBlue += pixels[a][b].getBlue();
-              counter++;
-            }
+    return boxFilter(size, false);
+  }
+
+  /**
+   * Method that blurs the picture using sums that were already built
+   * for it, so several blurs (or enhances) can share one IntegralImage.
+   * 
+   * @param sums the integral image of this picture
+   * @param size Blur size, greater is more blur
+   * @return Blurred picture
+   */
+  public Picture blur(IntegralImage sums, int size) {
+    int height = this.getHeight();
+    int width = this.getWidth();
+    Picture result = new Picture(height, width);
+    int[] resultPixels = result.getPixelBuffer();
+    int half = size / 2;
+
+    FilterEngine.getDefault().forEachRowStripe(result, (startRow, endRow) -> {
+      for (int i = startRow; i < endRow; i++) {
+        int index = i * width;
+        for (int j = 0; j < width; j++, index++) {
+          int counter = sums.getCount(j - half, i - half, j + half, i + half);
+          int red = 0;
+          int green = 0;
+          int blue = 0;
+          if (counter > 0) {
+            red = (int) (sums.getSum(IntegralImage.RED, j - half, i - half, j + half, i + half) / counter);
+            green = (int) (sums.getSum(IntegralImage.GREEN, j - half, i - half, j + half, i + half) / counter);
+            blue = (int) (sums.getSum(IntegralImage.BLUE, j - half, i - half, j + half, i + half) / counter);
           }
+          resultPixels[index] = Pixel.makeRGB(red, green, blue);
         }
-        resultPixels[i][j].setRed((int) (avgRed / counter));
-        resultPixels[i][j].setGreen((int) (avgGreen / counter));
-        resultPixels[i][j].setBlue((int) (avgBlue / counter));
       }
-    }
+    });
 
     return result;
   }
@@ -257,39 +302,177 @@ public class Picture extends SimplePicture {
    * size is the area to sample for blur.
    *
    * @param size Larger means more area to average around pixel
-   *             and longer compute time.
+   *             (the time doesn't depend on it).
    * @return enhanced picture
    */
   public Picture enhance(int size) {
-    Pixel[][] pixels = this.getPixels2D();
-    Picture result = new Picture(pixels.length, pixels[0].length);
-    Pixel[][] resultPixels = result.getPixels2D();
-
-    for (int i = 0; i < pixels.length; i++) {
-      for (int j = 0; j < pixels[0].length; j++) {
-        double avgRed = 0;
-        double avgGreen = 0;
-        double avgBlue = 0;
-        int counter = 0;
-        for (int a = i - size / 2; a < i + size / 2; a++) {
-          for (int b = j - size / 2; b < j + size / 2; b++) {
-            if ((a >= 0 && a < pixels.length) && (b >= 0 && b < pixels[0].length)) {
-              avgRed += pixels[a][b].getRed();
-              avgGreen += pixels[a][b].getGreen();
-              avgBlue += pixels[a][b].getBlue();
-              counter++;
-            }
-          }
+    return boxFilter(size, true);
+  }
+
+  /**
+   * Method that enhances the picture using sums that were already
+   * built for it, so several enhances (or blurs) can share one
+   * IntegralImage.
+   *
+   * @param sums the integral image of this picture
+   * @param size Larger means more area to average around pixel
+   * @return enhanced picture
+   */
+  public Picture enhance(IntegralImage sums, int size) {
+    int height = this.getHeight();
+    int width = this.getWidth();
+    int[] pixels = this.getPixelBufferForReading();
+    Picture result = new Picture(height, width);
+    int[] resultPixels = result.getPixelBuffer();
+    int half = size / 2;
+
+    FilterEngine.getDefault().forEachRowStripe(result, (startRow, endRow) -> {
+      for (int i = startRow; i < endRow; i++) {
+        int index = i * width;
+        for (int j = 0; j < width; j++, index++) {
+          int value = pixels[index];
+          double counter = sums.getCount(j - half, i - half, j + half, i + half);
+          double avgRed = sums.getSum(IntegralImage.RED, j - half, i - half, j + half, i + half);
+          double avgGreen = sums.getSum(IntegralImage.GREEN, j - half, i - half, j + half, i + half);
+          double avgBlue = sums.getSum(IntegralImage.BLUE, j - half, i - half, j + half, i + half);
+          int red = Pixel.correctValue((int) (2 * Pixel.getRed(value) - avgRed / counter));
+          int green = Pixel.correctValue((int) (2 * Pixel.getGreen(value) - avgGreen / counter));
+          int blue = Pixel.correctValue((int) (2 * Pixel.getBlue(value) - avgBlue / counter));
+          resultPixels[index] = Pixel.makeRGB(red, green, blue);
         }
-        resultPixels[i][j].setRed((int) (2 * pixels[i][j].getRed() - avgRed / counter));
-        resultPixels[i][j].setGreen((int) (2 * pixels[i][j].getGreen() - avgGreen / counter));
-        resultPixels[i][j].setBlue((int) (2 * pixels[i][j].getBlue() - avgBlue / counter));
       }
-    }
+    });
 
     return result;
   }
 
+  /**
+   * Helper method for blur and enhance that finds the average of the
+   * box around each pixel from running sums. Only the sums for the rows
+   * in the box are kept, so this needs far less memory than an
+   * IntegralImage when the sums aren't shared.
+   * 
+   * @param size    the box size
+   * @param enhance true to enhance each pixel by its average or false
+   *                to replace it with the average
+   * @return the new picture
+   */
+  private Picture boxFilter(int size, boolean enhance) {
+    Picture result = new Picture(this.getHeight(), this.getWidth());
+    FilterEngine.getDefault().forEachRowStripe(result,
+        boxFilterTask(IntBuffer.wrap(this.getPixelBufferForReading()),
+            IntBuffer.wrap(result.getPixelBuffer()), this.getWidth(), this.getHeight(),
+            size, enhance));
+    return result;
+  }
+
+  /**
+   * Helper method that makes the work boxFilter does for a stripe of
+   * rows. The pixels are passed in buffers so the same work runs on a
+   * Picture (with its array wrapped) or on an OffHeapPicture.
+   * 
+   * @param pixels        the pixels to filter
+   * @param resultPixels  the pixels to write (the same size)
+   * @param width         the width of the picture
+   * @param height        the height of the picture
+   * @param size          the box size
+   * @param enhance       true to enhance or false to blur
+   * @return the work for a stripe of rows
+   */
+  static FilterEngine.RowTask boxFilterTask(IntBuffer pixels, IntBuffer resultPixels,
+      int width, int height, int size, boolean enhance) {
+    int half = size / 2;
+
+    // the number of columns in each pixel's box is the same for every row
+    int[] colCounts = new int[width];
+    for (int j = 0; j < width; j++) {
+      colCounts[j] = Math.min(width, j + half) - Math.max(0, j - half);
+    }
+
+    return (startRow, endRow) -> {
+      int[] prefix = new int[width + 1];
+      int[] rowSums = new int[width];
+      long[] redSums = new long[width];
+      long[] greenSums = new long[width];
+      long[] blueSums = new long[width];
+
+      // add the rows in the window of the first row of the stripe
+      int low = Math.max(0, startRow - half);
+      int high = Math.min(height, startRow + half);
+      for (int a = low; a < high; a++) {
+        addRowBoxSums(pixels, width, a, half, prefix, rowSums, redSums, greenSums, blueSums, 1);
+      }
+
+      for (int i = startRow; i < endRow; i++) {
+        int rowCount = high - low;
+        int index = i * width;
+        for (int j = 0; j < width; j++, index++) {
+          long counter = (long) rowCount * colCounts[j];
+          int red = 0;
+          int green = 0;
+          int blue = 0;
+          if (counter > 0 && enhance) {
+            int value = pixels.get(index);
+            red = Pixel.correctValue((int) (2 * Pixel.getRed(value) - (double) redSums[j] / counter));
+            green = Pixel.correctValue((int) (2 * Pixel.getGreen(value) - (double) greenSums[j] / counter));
+            blue = Pixel.correctValue((int) (2 * Pixel.getBlue(value) - (double) blueSums[j] / counter));
+          } else if (counter > 0) {
+            red = (int) (redSums[j] / counter);
+            green = (int) (greenSums[j] / counter);
+            blue = (int) (blueSums[j] / counter);
+          }
+          resultPixels.put(index, Pixel.makeRGB(red, green, blue));
+        }
+
+        // slide the window of rows down by one
+        int nextLow = Math.max(0, i + 1 - half);
+        int nextHigh = Math.min(height, i + 1 + half);
+        if (nextHigh > high) {
+          addRowBoxSums(pixels, width, high, half, prefix, rowSums, redSums, greenSums, blueSums, 1);
+        }
+        if (nextLow > low) {
+          addRowBoxSums(pixels, width, low, half, prefix, rowSums, redSums, greenSums, blueSums, -1);
+        }
+        low = nextLow;
+        high = nextHigh;
+      }
+    };
+  }
+
+  /**
+   * Helper method for boxFilter that adds (or subtracts) the box sums
+   * of one row to the column sums. The box sum of a column is the sum
+   * of the pixels in the row from half before it up to half after it.
+   * 
+   * @param pixels    the packed pixels of the picture
+   * @param width     the width of the picture
+   * @param row       the row to add
+   * @param half      half the box size
+   * @param prefix    scratch array of width + 1 prefix sums
+   * @param rowSums   scratch array of width box sums
+   * @param redSums   the red column sums to change
+   * @param greenSums the green column sums to change
+   * @param blueSums  the blue column sums to change
+   * @param sign      1 to add the row or -1 to subtract it
+   */
+  private static void addRowBoxSums(IntBuffer pixels, int width, int row, int half,
+      int[] prefix, int[] rowSums, long[] redSums, long[] greenSums, long[] blueSums,
+      int sign) {
+    int start = row * width;
+    for (int shift = 16; shift >= 0; shift -= 8) {
+      long[] sums = shift == 16 ? redSums : shift == 8 ? greenSums : blueSums;
+      for (int j = 0; j < width; j++) {
+        prefix[j + 1] = prefix[j] + ((pixels.get(start + j) >> shift) & 0xff);
+      }
+      for (int j = 0; j < width; j++) {
+        rowSums[j] = prefix[Math.min(width, j + half)] - prefix[Math.max(0, j - half)];
+      }
+      for (int j = 0; j < width; j++) {
+        sums[j] += sign * rowSums[j];
+      }
+    }
+  }
+
   /**
    * Method that swaps the left and right halves of the image by shifting
    * each pixel half the width, wrapping around to the opposite side.
@@ -297,21 +480,19 @@ public class Picture extends SimplePicture {
    * @return A new picture with the left and right halves swapped
    */
   public Picture swapLeftRight() {
-    Pixel[][] pixels = this.getPixels2D();
-    int height = pixels.length;
-    int width = pixels[0].length;
+    int height = this.getHeight();
+    int width = this.getWidth();
+    PixelCursor pixel = this.getPixelCursorForReading();
 
     Picture shifted = new Picture(height, width);
-    Pixel[][] resultPixels = shifted.getPixels2D();
+    PixelCursor resultPixel = shifted.getPixelCursor();
 
     int shiftAmount = width / 2;
 
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        int newCol = (col + shiftAmount) % width;
+    while (pixel.next()) {
+      int newCol = (pixel.getCol() + shiftAmount) % width;
 
-        resultPixels[row][newCol].setColor(pixels[row][col].getColor());
-      }
+      resultPixel.moveTo(newCol, pixel.getRow()).copyColorFrom(pixel);
     }
     return shifted;
   }
@@ -325,20 +506,70 @@ public class Picture extends SimplePicture {
    * @return The picture with pixels shifted in stair steps
    */
   public Picture stairStep(int shiftCount, int steps) {
-    Pixel[][] pixels = this.getPixels2D();
-    Picture result = new Picture(pixels.length, pixels[0].length);
-    Pixel[][] resultPixels = result.getPixels2D();
-
-    for (int i = 0; i < pixels.length; i++) {
-      for (int j = 0; j < pixels[0].length; j++) {
-        int newCol = j + shiftCount * (i / (getHeight() / steps));
-        resultPixels[i][newCol % getWidth()].setColor(pixels[i][j].getColor());
-      }
+    return shiftRows(stairStepShifts(this.getHeight(), shiftCount, steps));
+  }
+
+  /**
+   * Helper method that works out how far stairStep shifts each row
+   * 
+   * @param height     the height of the picture
+   * @param shiftCount The number of pixels to shift to the right
+   * @param steps      The number of steps
+   * @return the amount to shift each row to the right
+   */
+  static int[] stairStepShifts(int height, int shiftCount, int steps) {
+    int stepHeight = height / steps;
+    int[] shifts = new int[height];
+    for (int row = 0; row < height; row++) {
+      shifts[row] = shiftCount * (row / stepHeight);
     }
+    return shifts;
+  }
 
+  /**
+   * Helper method that makes a new picture with each row of this
+   * picture shifted to the right (wrapping around) by its own amount.
+   * The result is filled in tile by tile so the part of each row that
+   * is read stays in the cache.
+   * 
+   * @param shifts the amount to shift each row to the right
+   * @return the shifted picture
+   */
+  private Picture shiftRows(int[] shifts) {
+    Picture result = new Picture(this.getHeight(), this.getWidth());
+    FilterEngine.getDefault().forEachTile(result,
+        shiftRowsTask(IntBuffer.wrap(this.getPixelBufferForReading()),
+            IntBuffer.wrap(result.getPixelBuffer()), this.getWidth(), shifts));
     return result;
   }
 
+  /**
+   * Helper method that makes the work shiftRows does for a tile. The
+   * pixels are passed in buffers so the same work runs on a Picture
+   * (with its array wrapped) or on an OffHeapPicture.
+   * 
+   * @param pixels       the pixels to shift
+   * @param resultPixels the pixels to write (the same size)
+   * @param width        the width of the picture
+   * @param shifts       the amount to shift each row to the right
+   * @return the work for a tile
+   */
+  static FilterEngine.TileTask shiftRowsTask(IntBuffer pixels, IntBuffer resultPixels,
+      int width, int[] shifts) {
+    return (x0, y0, x1, y1) -> {
+      for (int row = y0; row < y1; row++) {
+        int rowStart = row * width;
+        int fromCol = Math.floorMod(x0 - shifts[row], width);
+        for (int col = x0; col < x1; col++) {
+          resultPixels.put(rowStart + col, 0xff000000 | (pixels.get(rowStart + fromCol) & 0x00ffffff));
+          fromCol++;
+          if (fromCol == width)
+            fromCol = 0;
+        }
+      }
+    };
+  }
+
   /**
    * Applies a "liquify" distortion by shifting each row horizontally
    * according to a Gaussian (bell-curve) function.
@@ -347,12 +578,18 @@ public class Picture extends SimplePicture {
    * @return Liquified picture
    */
   public Picture liquify(int maxHeight) {
-    Pixel[][] pixels = this.getPixels2D();
-    int height = pixels.length;
-    int width = pixels[0].length;
+    return shiftRows(liquifyShifts(this.getHeight(), maxHeight));
+  }
 
-    Picture result = new Picture(height, width);
-    Pixel[][] resultPixels = result.getPixels2D();
+  /**
+   * Helper method that works out how far liquify shifts each row
+   * 
+   * @param height    the height of the picture
+   * @param maxHeight Max height (shift) of curve in pixels
+   * @return the amount to shift each row to the right
+   */
+  static int[] liquifyShifts(int height, int maxHeight) {
+    int[] shifts = new int[height];
 
     double bellWidth = 70.0;
     double centerRow = height / 2.0;
@@ -360,16 +597,10 @@ public class Picture extends SimplePicture {
     for (int row = 0; row < height; row++) {
       double exponent = Math.pow(row - centerRow, 2.0)
           / (2.0 * Math.pow(bellWidth, 2.0));
-      int rightShift = (int) (maxHeight * Math.exp(-exponent));
-
-      for (int col = 0; col < width; col++) {
-        int newCol = (col + rightShift) % width;
-
-        resultPixels[row][newCol].setColor(pixels[row][col].getColor());
-      }
+      shifts[row] = (int) (maxHeight * Math.exp(-exponent));
     }
 
-    return result;
+    return shifts;
   }
 
   /**
@@ -380,25 +611,27 @@ public class Picture extends SimplePicture {
    * @return Wavy picture
    */
   public Picture wavy(int amplitude) {
-    Pixel[][] pixels = this.getPixels2D();
-    int height = pixels.length;
-    int width = pixels[0].length;
+    return shiftRows(wavyShifts(this.getHeight(), amplitude));
+  }
 
-    Picture result = new Picture(height, width);
-    Pixel[][] resultPixels = result.getPixels2D();
+  /**
+   * Helper method that works out how far wavy shifts each row
+   * 
+   * @param height    the height of the picture
+   * @param amplitude The maximum shift of pixels
+   * @return the amount to shift each row to the right
+   */
+  static int[] wavyShifts(int height, int amplitude) {
+    int[] shifts = new int[height];
 
     double frequency = 0.011;
     double phase = 0.0; // Shift in radians
     // ---------------------------------------------
     for (int row = 0; row < height; row++) {
       double shiftValue = amplitude * Math.sin(2.0 * Math.PI * frequency * row + phase);
-      int shift = (int) Math.round(shiftValue);
-      for (int col = 0; col < width; col++) {
-        int newCol = (col + shift + width) % width;
-        resultPixels[row][newCol].setColor(pixels[row][col].getColor());
-      }
+      shifts[row] = (int) Math.round(shiftValue);
     }
-    return result;
+    return shifts;
   }
 
   /**
@@ -407,15 +640,14 @@ public class Picture extends SimplePicture {
    * from left to right
    */
   public void mirrorVertical() {
-    Pixel[][] pixels = this.getPixels2D();
-    Pixel leftPixel = null;
-    Pixel rightPixel = null;
-    int width = pixels[0].length;
-    for (int row = 0; row < pixels.length; row++) {
+    PixelCursor leftPixel = this.getPixelCursor();
+    PixelCursor rightPixel = this.getPixelCursor();
+    int width = this.getWidth();
+    for (int row = 0; row < this.getHeight(); row++) {
       for (int col = 0; col < width / 2; col++) {
-        leftPixel = pixels[row][col];
-        rightPixel = pixels[row][width - 1 - col];
-        rightPixel.setColor(leftPixel.getColor());
+        leftPixel.moveTo(col, row);
+        rightPixel.moveTo(width - 1 - col, row);
+        rightPixel.copyColorFrom(leftPixel);
       }
     }
   }
@@ -423,19 +655,18 @@ public class Picture extends SimplePicture {
   /** Mirror just part of a picture of a temple */
   public void mirrorTemple() {
     int mirrorPoint = 276;
-    Pixel leftPixel = null;
-    Pixel rightPixel = null;
+    PixelCursor leftPixel = this.getPixelCursor();
+    PixelCursor rightPixel = this.getPixelCursor();
     int count = 0;
-    Pixel[][] pixels = this.getPixels2D();
 
     // loop through the rows
     for (int row = 27; row < 97; row++) {
       // loop from 13 to just before the mirror point
       for (int col = 13; col < mirrorPoint; col++) {
 
-        leftPixel = pixels[row][col];
-        rightPixel = pixels[row][mirrorPoint - col + mirrorPoint];
-        rightPixel.setColor(leftPixel.getColor());
+        leftPixel.moveTo(col, row);
+        rightPixel.moveTo(mirrorPoint - col + mirrorPoint, row);
+        rightPixel.copyColorFrom(leftPixel);
       }
     }
   }
@@ -451,25 +682,24 @@ public class Picture extends SimplePicture {
    */
   public void copy(Picture fromPic,
       int startRow, int startCol) {
-    Pixel fromPixel = null;
-    Pixel toPixel = null;
-    Pixel[][] toPixels = this.getPixels2D();
-    Pixel[][] fromPixels = fromPic.getPixels2D();
-    for (int fromRow = 0, toRow = startRow; fromRow < fromPixels.length &&
-        toRow < toPixels.length; fromRow++, toRow++) {
-      for (int fromCol = 0, toCol = startCol; fromCol < fromPixels[0].length &&
-          toCol < toPixels[0].length; fromCol++, toCol++) {
-        fromPixel = fromPixels[fromRow][fromCol];
-        toPixel = toPixels[toRow][toCol];
-        toPixel.setColor(fromPixel.getColor());
+    PixelCursor fromPixel = fromPic.getPixelCursorForReading();
+    PixelCursor toPixel = this.getPixelCursor();
+    for (int fromRow = 0, toRow = startRow; fromRow < fromPixel.getHeight() &&
+        toRow < toPixel.getHeight(); fromRow++, toRow++) {
+      for (int fromCol = 0, toCol = startCol; fromCol < fromPixel.getWidth() &&
+          toCol < toPixel.getWidth(); fromCol++, toCol++) {
+        fromPixel.moveTo(fromCol, fromRow);
+        toPixel.moveTo(toCol, toRow);
+        toPixel.copyColorFrom(fromPixel);
       }
     }
   }
 
   /** Method to create a collage of several pictures */
   public void createCollage() {
-    Picture flower1 = new Picture("images/flower1.jpg");
-    Picture flower2 = new Picture("images/flower2.jpg");
+    Picture[] flowers = loadPictures("images/flower1.jpg", "images/flower2.jpg");
+    Picture flower1 = flowers[0];
+    Picture flower2 = flowers[1];
     this.copy(flower1, 0, 0);
     this.copy(flower2, 100, 0);
     this.copy(flower1, 200, 0);
@@ -488,19 +718,16 @@ public class Picture extends SimplePicture {
    * @param edgeDist the distance for finding edges
    */
   public void edgeDetection(int edgeDist) {
-    Pixel leftPixel = null;
-    Pixel rightPixel = null;
-    Pixel[][] pixels = this.getPixels2D();
-    Color rightColor = null;
-    for (int row = 0; row < pixels.length; row++) {
-      for (int col = 0; col < pixels[0].length - 1; col++) {
-        leftPixel = pixels[row][col];
-        rightPixel = pixels[row][col + 1];
-        rightColor = rightPixel.getColor();
-        if (leftPixel.colorDistance(rightColor) > edgeDist)
-          leftPixel.setColor(Color.BLACK);
+    PixelCursor leftPixel = this.getPixelCursor();
+    PixelCursor rightPixel = this.getPixelCursor();
+    for (int row = 0; row < this.getHeight(); row++) {
+      for (int col = 0; col < this.getWidth() - 1; col++) {
+        leftPixel.moveTo(col, row);
+        rightPixel.moveTo(col + 1, row);
+        if (leftPixel.colorDistance(rightPixel) > edgeDist)
+          leftPixel.setRGB(0, 0, 0);
         else
-          leftPixel.setColor(Color.WHITE);
+          leftPixel.setRGB(255, 255, 255);
       }
     }
   }
@@ -512,26 +739,47 @@ public class Picture extends SimplePicture {
    * @return edge detected picture
    */
   public Picture edgeDetectionBelow(int threshold) {
-    Pixel[][] pixels = this.getPixels2D();
-    Picture result = new Picture(pixels.length, pixels[0].length);
-    Pixel[][] resultPixels = result.getPixels2D();
-    Pixel topPixel = null;
-    Pixel bottomPixel = null;
-    Color bottomColor = null;
-    for (int col = 0; col < pixels[0].length; col++) {
-      for (int row = 0; row < pixels.length - 1; row++) {
-        bottomPixel = pixels[row][col];
-        topPixel = pixels[row + 1][col];
-        bottomColor = bottomPixel.getColor();
-        if (topPixel.colorDistance(bottomColor) > threshold)
-          resultPixels[row + 1][col].setColor(Color.BLACK);
-        else
-          resultPixels[row + 1][col].setColor(Color.WHITE);
-      }
-    }
+    Picture result = new Picture(this.getHeight(), this.getWidth());
+    FilterEngine.getDefault().forEachTile(result,
+        edgeDetectionBelowTask(IntBuffer.wrap(this.getPixelBufferForReading()),
+            IntBuffer.wrap(result.getPixelBuffer()), this.getWidth(), threshold));
     return result;
   }
 
+  /**
+   * Helper method that makes the work edgeDetectionBelow does for a
+   * tile. The pixels are passed in buffers so the same work runs on a
+   * Picture (with its array wrapped) or on an OffHeapPicture.
+   * 
+   * @param pixels       the pixels to look for edges in
+   * @param resultPixels the pixels to write (the same size, all white)
+   * @param width        the width of the picture
+   * @param threshold    threshold as determined by Pixel’s colorDistance method
+   * @return the work for a tile
+   */
+  static FilterEngine.TileTask edgeDetectionBelowTask(IntBuffer pixels, IntBuffer resultPixels,
+      int width, int threshold) {
+    // compare each pixel with the one above it (the top row stays white)
+    return (x0, y0, x1, y1) -> {
+      for (int row = Math.max(1, y0); row < y1; row++) {
+        int index = row * width + x0;
+        for (int col = x0; col < x1; col++, index++) {
+          int top = pixels.get(index);
+          int bottom = pixels.get(index - width);
+          int redDistance = Pixel.getRed(top) - Pixel.getRed(bottom);
+          int greenDistance = Pixel.getGreen(top) - Pixel.getGreen(bottom);
+          int blueDistance = Pixel.getBlue(top) - Pixel.getBlue(bottom);
+          double distance = Math.sqrt(redDistance * redDistance
+              + greenDistance * greenDistance + blueDistance * blueDistance);
+          if (distance > threshold)
+            resultPixels.put(index, 0xff000000);
+          else
+            resultPixels.put(index, 0xffffffff);
+        }
+      }
+    };
+  }
+
   /**
    * Method that creates a green screen picture
    * 
@@ -539,14 +787,13 @@ public class Picture extends SimplePicture {
    */
   public Picture greenScreen() {
 
-    // Get background picture
-    Picture bkgnd = new Picture("greenScreenImages/IndoorHouseLibraryBackground.jpg");
-
-    // Get cat picture
-    Picture cat = new Picture("greenScreenImages/kitten1GreenScreen.jpg");
-
-    // Get mouse picture
-    Picture mouse = new Picture("greenScreenImages/mouse1GreenScreen.jpg");
+    // Get the background, cat, and mouse pictures at the same time
+    Picture[] pictures = loadPictures("greenScreenImages/IndoorHouseLibraryBackground.jpg",
+                                      "greenScreenImages/kitten1GreenScreen.jpg",
+                                      "greenScreenImages/mouse1GreenScreen.jpg");
+    Picture bkgnd = pictures[0];
+    Picture cat = pictures[1];
+    Picture mouse = pictures[2];
 
     // Place the mouse at (260, 290), half-size
     placeSubject(bkgnd, mouse, 287, 349, 0.52);
@@ -572,12 +819,13 @@ public class Picture extends SimplePicture {
       int targetX,
       int targetY,
       double scaleFactor) {
-    Pixel subjectPixel;
+    PixelCursor subjectPixel = subject.getPixelCursorForReading();
+    PixelCursor backgroundPixel = background.getPixelCursor();
 
     // Loop over every (x,y)
     for (int srcX = 0; srcX < subject.getWidth(); srcX++) {
       for (int srcY = 0; srcY < subject.getHeight(); srcY++) {
-        subjectPixel = subject.getPixel(srcX, srcY);
+        subjectPixel.moveTo(srcX, srcY);
 
         if (subjectPixel.getRed() + subjectPixel.getBlue() - 50 > subjectPixel.getGreen()) {
           // Scaling
@@ -587,7 +835,7 @@ public class Picture extends SimplePicture {
           // Making sure not to go out of bounds
           if (trgX >= 0 && trgX < background.getWidth() &&
               trgY >= 0 && trgY < background.getHeight()) {
-            background.getPixel(trgX, trgY).setColor(subjectPixel.getColor());
+            backgroundPixel.moveTo(trgX, trgY).copyColorFrom(subjectPixel);
           }
         }
       }
@@ -603,6 +851,20 @@ public class Picture extends SimplePicture {
    * @return the rotated picture, cropped vertically but wider horizontally
    */
   public Picture rotate(double degrees) {
+    return rotate(degrees, Interpolation.NEAREST);
+  }
+
+  /**
+   * Rotates the current picture by the given degrees around its center
+   * like rotate(degrees), sampling the original with the passed
+   * interpolation. Bilinear and bicubic give smooth edges, which matters
+   * for small angles.
+   * 
+   * @param degrees       the angle in degrees (e.g., 30 or 45)
+   * @param interpolation how to sample between pixels
+   * @return the rotated picture, cropped vertically but wider horizontally
+   */
+  public Picture rotate(double degrees, Interpolation interpolation) {
     // Convert degrees to radians
     double angle = Math.toRadians(degrees);
 
@@ -610,6 +872,31 @@ public class Picture extends SimplePicture {
     int oldWidth = this.getWidth();
     int oldHeight = this.getHeight();
 
+    Rectangle2D bounds = rotatedBounds(oldWidth, oldHeight, angle);
+    int newWidth = (int) Math.ceil(bounds.getWidth());
+    int newHeight = (int) Math.ceil(bounds.getHeight());
+
+    Picture rotatedPic = new Picture(newHeight, newWidth);
+    FilterEngine.getDefault().forEachTile(rotatedPic,
+        rotateTask(IntBuffer.wrap(this.getPixelBufferForReading()), oldWidth, oldHeight,
+            IntBuffer.wrap(rotatedPic.getPixelBuffer()), newWidth, bounds, angle,
+            interpolation));
+
+    // Return the resulting wide, rotated picture
+    return rotatedPic;
+  }
+
+  /**
+   * Helper method that works out where a picture rotated by rotate
+   * ends up: the box around its rotated corners with the left and
+   * right padding added, in the original picture's coordinates.
+   * 
+   * @param oldWidth  the width of the original picture
+   * @param oldHeight the height of the original picture
+   * @param angle     the angle in radians
+   * @return the box the rotated picture fills
+   */
+  static Rectangle2D rotatedBounds(int oldWidth, int oldHeight, double angle) {
     // Calculate the center coordinates of the original picture
     double cx = oldWidth / 2.0;
     double cy = oldHeight / 2.0;
@@ -660,41 +947,73 @@ public class Picture extends SimplePicture {
     minX -= marginX;
     maxX += marginX;
 
-    int newWidth = (int) Math.ceil(maxX - minX);
-    int newHeight = (int) Math.ceil(maxY - minY);
-
-    Picture rotatedPic = new Picture(newHeight, newWidth);
-
-    Pixel[][] resultPixels = rotatedPic.getPixels2D();
-
-    for (int nx = 0; nx < newWidth; nx++) {
-      for (int ny = 0; ny < newHeight; ny++) {
-        double xWorld = nx + minX;
-        double yWorld = ny + minY;
-
-        // Shift so center is (0,0), then rotate by -angle
-        double xCentered = xWorld - cx;
-        double yCentered = yWorld - cy;
-
-        double oldX = (xCentered * cosA) + (yCentered * sinA);
-        double oldY = (-xCentered * sinA) + (yCentered * cosA);
-
-        oldX += cx;
-        oldY += cy;
-
-        int ox = (int) Math.round(oldX);
-        int oy = (int) Math.round(oldY);
+    return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+  }
 
-        if (ox >= 0 && ox < oldWidth && oy >= 0 && oy < oldHeight) {
-          resultPixels[ny][nx].setColor(this.getPixel(ox, oy).getColor());
-        } else {
-          resultPixels[ny][nx].setColor(Color.WHITE);
+  /**
+   * Helper method that makes the work rotate does for a tile of the
+   * rotated picture. The pixels are passed in buffers so the same work
+   * runs on a Picture (with its array wrapped) or on an OffHeapPicture.
+   * 
+   * @param pixels        the pixels of the original picture
+   * @param oldWidth      the width of the original picture
+   * @param oldHeight     the height of the original picture
+   * @param resultPixels  the pixels of the rotated picture
+   * @param newWidth      the width of the rotated picture
+   * @param bounds        the box the rotated picture fills (see rotatedBounds)
+   * @param angle         the angle in radians
+   * @param interpolation how to sample between pixels
+   * @return the work for a tile
+   */
+  static FilterEngine.TileTask rotateTask(IntBuffer pixels, int oldWidth, int oldHeight,
+      IntBuffer resultPixels, int newWidth, Rectangle2D bounds, double angle,
+      Interpolation interpolation) {
+    double cx = oldWidth / 2.0;
+    double cy = oldHeight / 2.0;
+    double cosA = Math.cos(angle);
+    double sinA = Math.sin(angle);
+    double left = bounds.getX();
+    double top = bounds.getY();
+
+    // fill in the result a tile at a time so the part of the original
+    // that a tile reads stays in the cache
+    return (x0, y0, x1, y1) -> {
+      for (int ny = y0; ny < y1; ny++) {
+        // Shift so center is (0,0), then rotate by -angle to find where
+        // the first pixel of this row comes from in the original
+        double xCentered = x0 + left - cx;
+        double yCentered = ny + top - cy;
+        double oldX = (xCentered * cosA) + (yCentered * sinA) + cx;
+        double oldY = (-xCentered * sinA) + (yCentered * cosA) + cy;
+
+        // each step right in the result is a step of (cos, -sin) in the original
+        int index = ny * newWidth + x0;
+        for (int nx = x0; nx < x1; nx++, index++) {
+          resultPixels.put(index, interpolation.sample(pixels, oldWidth, oldHeight,
+              oldX, oldY, 0xffffffff));
+          oldX += cosA;
+          oldY -= sinA;
         }
       }
-    }
+    };
+  }
 
-    // Return the resulting wide, rotated picture
-    return rotatedPic;
+  /**
+   * Method to read several pictures at the same time (see loadAll).
+   * A file that can't be read gives the same "Couldn't load" picture
+   * as new Picture(fileName).
+   * 
+   * @param fileNames the files to read
+   * @return the pictures in the same order as the file names
+   */
+  private static Picture[] loadPictures(String... fileNames) {
+    List<CompletableFuture<Picture>> futures = loadAll(Arrays.asList(fileNames));
+    Picture[] pictures = new Picture[fileNames.length];
+    for (int i = 0; i < pictures.length; i++) {
+      String fileName = fileNames[i];
+      pictures[i] = futures.get(i).exceptionally(ex -> new Picture(fileName)).join();
+    }
+    return pictures;
   }
 
   /*
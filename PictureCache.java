@@ -0,0 +1,219 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class that keeps decoded pictures in memory so a file that is loaded
+ * again doesn't have to be decoded again.  Pictures are found by the
+ * canonical path of the file and its modification time and size, so a
+ * file that has changed is decoded again.  The cache holds at most a
+ * set number of pixel bytes; when it is full the pictures used least
+ * recently are dropped.
+ *
+ * The cached images are shared by every picture loaded from the same
+ * file, so they must never be changed.  SimplePicture copies a shared
+ * image the first time a picture could change it (copy-on-write).
+ *
+ * The default cache used by SimplePicture.loadOrFail holds 256 MB (or
+ * a quarter of the heap if that is less).  Set the pixlab.cache.bytes
+ * system property to use a different size, or 0 to turn caching off.
+ */
+public class PictureCache
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the most bytes the default cache holds if the property isn't set */
+  public static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+  /** the cache used by SimplePicture.loadOrFail */
+  private static PictureCache defaultCache;
+
+  /** the most pixel bytes to hold */
+  private final long maxBytes;
+
+  /** the cached images from least to most recently used */
+  private final LinkedHashMap<String, BufferedImage> images =
+    new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+
+  /** the pixel bytes held now */
+  private long bytes;
+
+  /** the number of times get found a picture */
+  private long hits;
+
+  /** the number of times get didn't find a picture */
+  private long misses;
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * Constructor that takes the most pixel bytes to hold
+   * @param maxBytes the size of the cache in bytes (0 to cache nothing)
+   */
+  public PictureCache(long maxBytes)
+  {
+    if (maxBytes < 0)
+      throw new IllegalArgumentException("maxBytes can't be negative: " + maxBytes);
+    this.maxBytes = maxBytes;
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to get the cache used by SimplePicture.loadOrFail
+   * @return the default picture cache
+   */
+  public static synchronized PictureCache getDefault()
+  {
+    if (defaultCache == null)
+    {
+      long maxBytes = Math.min(DEFAULT_MAX_BYTES, Runtime.getRuntime().maxMemory() / 4);
+      String property = System.getProperty("pixlab.cache.bytes");
+      if (property != null)
+        maxBytes = Long.parseLong(property.trim());
+      defaultCache = new PictureCache(maxBytes);
+    }
+    return defaultCache;
+  }
+
+  /**
+   * Method to set the cache used by SimplePicture.loadOrFail
+   * @param cache the cache to use
+   */
+  public static synchronized void setDefault(PictureCache cache)
+  {
+    defaultCache = cache;
+  }
+
+  /**
+   * Method to get the key for a file: its canonical path, modification
+   * time, and length
+   * @param file the file
+   * @return the key for the file as it is now
+   * @throws IOException if the canonical path can't be found
+   */
+  private static String keyFor(File file) throws IOException
+  {
+    return file.getCanonicalPath() + "|" + file.lastModified() + "|" + file.length();
+  }
+
+  /**
+   * Method to get the number of pixel bytes in an image
+   */
+  private static long bytesIn(BufferedImage image)
+  {
+    return 4L * image.getWidth() * image.getHeight();
+  }
+
+  /**
+   * Method to get the decoded image for a file if it is cached and the
+   * file hasn't changed since.  The image must not be changed.
+   * @param file the file to look for
+   * @return the shared image or null if it isn't cached
+   * @throws IOException if the canonical path can't be found
+   */
+  public BufferedImage get(File file) throws IOException
+  {
+    if (maxBytes == 0)
+      return null;
+    String key = keyFor(file);
+    synchronized (this)
+    {
+      BufferedImage image = images.get(key);
+      if (image == null)
+        misses++;
+      else
+        hits++;
+      return image;
+    }
+  }
+
+  /**
+   * Method to add the decoded image for a file.  The image must not be
+   * changed after this.  Images bigger than the whole cache aren't kept.
+   * @param file the file the image was decoded from
+   * @param image the decoded image
+   * @return true if the image was kept (and so must not be changed)
+   * @throws IOException if the canonical path can't be found
+   */
+  public boolean put(File file, BufferedImage image) throws IOException
+  {
+    long imageBytes = bytesIn(image);
+    if (imageBytes > maxBytes)
+      return false;
+    String key = keyFor(file);
+    synchronized (this)
+    {
+      BufferedImage old = images.put(key, image);
+      if (old != null)
+        bytes -= bytesIn(old);
+      bytes += imageBytes;
+
+      // drop the least recently used pictures until it fits
+      Iterator<Map.Entry<String, BufferedImage>> entries = images.entrySet().iterator();
+      while (bytes > maxBytes && entries.hasNext())
+      {
+        Map.Entry<String, BufferedImage> eldest = entries.next();
+        if (eldest.getValue() == image)
+          continue;
+        bytes -= bytesIn(eldest.getValue());
+        entries.remove();
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Method to drop every cached picture
+   */
+  public synchronized void clear()
+  {
+    images.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Method to get the most pixel bytes the cache holds
+   * @return the size of the cache in bytes
+   */
+  public long getMaxBytes() { return maxBytes; }
+
+  /**
+   * Method to get the pixel bytes the cache holds now
+   * @return the bytes used
+   */
+  public synchronized long getBytes() { return bytes; }
+
+  /**
+   * Method to get the number of pictures the cache holds now
+   * @return the number of cached pictures
+   */
+  public synchronized int getCount() { return images.size(); }
+
+  /**
+   * Method to get the number of times a picture was found
+   * @return the number of hits
+   */
+  public synchronized long getHitCount() { return hits; }
+
+  /**
+   * Method to get the number of times a picture wasn't found
+   * @return the number of misses
+   */
+  public synchronized long getMissCount() { return misses; }
+
+  /**
+   * Method to return a string with information about the cache
+   * @return a string with the size, hits, and misses
+   */
+  public synchronized String toString()
+  {
+    return "PictureCache " + images.size() + " pictures " + bytes + " of " +
+      maxBytes + " bytes, " + hits + " hits, " + misses + " misses";
+  }
+
+}
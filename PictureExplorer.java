@@ -4,11 +4,15 @@ import java.awt.event.*;
 import javax.swing.*;
 import java.awt.image.*;
 import javax.swing.border.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
 /**
  * Displays a picture and lets you explore the picture by displaying the row, column, red,
  * green, and blue values of the pixel at the cursor when you click a mouse button or
  * press and hold a mouse button while moving the cursor.  It also lets you zoom in or
  * out.  You can also type in a row and column value to see the color at that location.
+ * runWithPreview shows a picture while a filter is making it, with a Filter menu
+ * to cancel the filter.
  * 
  * Originally created for the Jython Environment for Students (JES). 
  * Modified to work with DrJava by Barbara Ericson
@@ -79,9 +83,15 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
   private JMenuItem twoHundred;
   /** 500% zoom level */
   private JMenuItem fiveHundred;
+  /** nearest neighbor scaling (each pixel is a square) */
+  private JMenuItem nearest;
+  /** bilinear scaling */
+  private JMenuItem bilinear;
+  /** bicubic scaling */
+  private JMenuItem bicubic;
   
   /** The picture being explored */
-  private DigitalPicture picture;
+  private volatile DigitalPicture picture;
   
   /** The image icon used to display the picture */
   private ImageIcon scrollImageIcon;
@@ -90,7 +100,19 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
   private ImageDisplay imageDisplay;
   
   /** the zoom factor (amount to zoom) */
-  private double zoomFactor;
+  private volatile double zoomFactor;
+  
+  /** the smaller copies of the picture used to zoom out */
+  private ZoomPyramid pyramid;
+  
+  /** the pyramid made off the event thread for the next repaint */
+  private volatile ZoomPyramid preparedPyramid;
+  
+  /** the filter being shown as it runs (or null) */
+  private FilterProgress progress;
+  
+  /** the menu item that cancels the filter */
+  private JMenuItem cancelItem;
   
   /** the number system to use, 0 means starting at 0, 1 means starting at 1 */
   private int numberBase=0;
@@ -157,6 +179,10 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     hundredFifty = new JMenuItem("150%");
     twoHundred = new JMenuItem("200%");
     fiveHundred = new JMenuItem("500%");
+    nearest = new JMenuItem("Nearest Neighbor");
+    nearest.setEnabled(false);
+    bilinear = new JMenuItem("Bilinear");
+    bicubic = new JMenuItem("Bicubic");
     
     // add the action listeners
     twentyFive.addActionListener(this);
@@ -166,6 +192,9 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     hundredFifty.addActionListener(this);
     twoHundred.addActionListener(this);
     fiveHundred.addActionListener(this);
+    nearest.addActionListener(this);
+    bilinear.addActionListener(this);
+    bicubic.addActionListener(this);
     
     // add the menu items to the menus
     zoomMenu.add(twentyFive);
@@ -175,6 +204,10 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     zoomMenu.add(hundredFifty);
     zoomMenu.add(twoHundred);
     zoomMenu.add(fiveHundred);
+    zoomMenu.addSeparator();
+    zoomMenu.add(nearest);
+    zoomMenu.add(bilinear);
+    zoomMenu.add(bicubic);
     menuBar.add(zoomMenu);
     
     // set the menu bar to this menu
@@ -189,6 +222,7 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     scrollPane = new JScrollPane();
     
     BufferedImage bimg = picture.getBufferedImage();
+    pyramid = new ZoomPyramid(bimg);
     imageDisplay = new ImageDisplay(bimg);
     imageDisplay.addMouseMotionListener(this);
     imageDisplay.addMouseListener(this);
@@ -471,8 +505,12 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
   }
   
   /**
-   * Zooms in the on picture by scaling the image.  
-   * It is extremely memory intensive.
+   * Zooms in the on picture by scaling the image.  Zooming in draws
+   * the picture bigger through a scaled Graphics2D (with the
+   * interpolation picked in the Zoom menu), so only the part that
+   * shows is scaled.  Zooming out shows a smaller copy from the
+   * zoom pyramid; until that copy has been made (off the event thread)
+   * the picture is drawn smaller instead.
    * @param factor the amount to zoom by
    */
   public void zoom(double factor)
@@ -480,25 +518,282 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     // save the current zoom factor
     zoomFactor = factor;
     
-    // calculate the new width and height and get an image that size
-    int width = (int) (picture.getWidth()*zoomFactor);
-    int height = (int) (picture.getHeight()*zoomFactor);
-    BufferedImage bimg = picture.getBufferedImage();
-    
     // set the scroll image icon to the new image
-    imageDisplay.setImage(bimg.getScaledInstance(width, height, Image.SCALE_DEFAULT));
+    showZoomedImage();
     imageDisplay.setCurrentX((int) (colIndex * zoomFactor));
     imageDisplay.setCurrentY((int) (rowIndex * zoomFactor));
-    imageDisplay.revalidate();
     checkScroll();  // check if need to reposition scroll
   }
   
   /**
-   * Repaints the image on the scrollpane.  
+   * Method to show the image for the current zoom factor, starting to
+   * make the zoomed copy if it hasn't been made yet
+   */
+  private void showZoomedImage()
+  {
+    BufferedImage zoomed = pyramid.getCachedImage(zoomFactor);
+    if (zoomed == pyramid.getSource())
+      imageDisplay.setImage(zoomed, zoomFactor);
+    else if (zoomed != null)
+      imageDisplay.setImage(zoomed);
+    else
+    {
+      imageDisplay.setImage(pyramid.getSource(), zoomFactor);
+      makeZoomedImage(zoomFactor);
+    }
+    imageDisplay.revalidate();
+  }
+  
+  /**
+   * Method to make the zoomed copy for a factor off the event thread
+   * and show it when it is done, if the picture is still at that zoom
+   * @param factor the zoom factor to make the copy for
+   */
+  private void makeZoomedImage(final double factor)
+  {
+    final ZoomPyramid zoomPyramid = pyramid;
+    new SwingWorker<BufferedImage, Void>() {
+      protected BufferedImage doInBackground() {
+        return zoomPyramid.getImage(factor);
+      }
+      
+      protected void done() {
+        // skip it if the picture or the zoom changed since
+        if (zoomPyramid != pyramid || zoomFactor != factor)
+          return;
+        try {
+          imageDisplay.setImage(get());
+          imageDisplay.revalidate();
+        } catch (Exception ex) {
+          // keep drawing the picture smaller
+        }
+      }
+    }.execute();
+  }
+  
+  /**
+   * Repaints the image on the scrollpane.  The picture may have
+   * changed so the zoomed copies are made again.  This goes through
+   * the RepaintScheduler, so it returns right away and many calls in
+   * a frame only repaint once.
    */
   public void repaint()
   {
-    pictureFrame.repaint();
+    final double factor = zoomFactor;
+    RepaintScheduler.getDefault().schedule(this, () -> {
+      // make the new pyramid and the zoomed copy off the event thread
+      ZoomPyramid newPyramid = new ZoomPyramid(picture.getBufferedImage());
+      newPyramid.getImage(factor);
+      preparedPyramid = newPyramid;
+    }, () -> {
+      ZoomPyramid newPyramid = preparedPyramid;
+      preparedPyramid = null;
+      if (newPyramid != null)
+        pyramid = newPyramid;
+      showZoomedImage();
+      showProgress();
+      pictureFrame.repaint();
+    });
+  }
+  
+  /**
+   * Method to show the part of the picture that changed.  Only that
+   * part of the zoomed copies is made again and only it is repainted.
+   * This must be called on the event dispatch thread.
+   * @param region the part of the picture that changed
+   */
+  private void pictureChanged(Rectangle region)
+  {
+    pyramid.update(region);
+    
+    // the image shown may be a smaller copy of the picture
+    double ratio = (double) imageDisplay.getImage().getWidth(null) / 
+      pyramid.getSource().getWidth();
+    int x0 = (int) Math.floor(region.x * ratio);
+    int y0 = (int) Math.floor(region.y * ratio);
+    int x1 = (int) Math.ceil((region.x + region.width) * ratio);
+    int y1 = (int) Math.ceil((region.y + region.height) * ratio);
+    imageDisplay.imageChanged(new Rectangle(x0, y0, x1 - x0, y1 - y0));
+    showProgress();
+  }
+  
+  /**
+   * Method to run a filter while showing the picture it makes as it is
+   * made.  An explorer opens when the first part of the filter's picture
+   * is done and the parts are shown as they are done; its Filter menu
+   * (or closing it) cancels the filter.  The explorer stays open with
+   * the result.
+   * For example:
+   * <pre>
+   *   Picture blurred = PictureExplorer.runWithPreview(() -> beach.blur(50));
+   * </pre>
+   * @param filter the filter to run
+   * @return the picture the filter made or null if it was cancelled
+   */
+  public static Picture runWithPreview(Supplier<Picture> filter)
+  {
+    FilterProgress progress = new FilterProgress();
+    progress.addListener(new PreviewListener(progress));
+    try
+    {
+      return progress.run(filter);
+    }
+    catch (CancellationException ex)
+    {
+      return null;
+    }
+  }
+  
+  /**
+   * Method to follow a running filter: add the Filter menu with the
+   * Cancel item and show how much is done in the title
+   * @param filterProgress the progress of the filter
+   */
+  private void watch(final FilterProgress filterProgress)
+  {
+    progress = filterProgress;
+    JMenu filterMenu = new JMenu("Filter");
+    cancelItem = new JMenuItem("Cancel");
+    cancelItem.addActionListener(this);
+    filterMenu.add(cancelItem);
+    menuBar.add(filterMenu);
+    menuBar.revalidate();
+    
+    // closing the window stops the filter too
+    pictureFrame.addWindowListener(new WindowAdapter() {
+      public void windowClosed(WindowEvent e) {
+        filterProgress.cancel();
+      }
+    });
+    showProgress();
+  }
+  
+  /**
+   * Method to show a new picture made by the filter being followed
+   * @param newPicture the picture to show
+   */
+  private void setPicture(DigitalPicture newPicture)
+  {
+    picture = newPicture;
+    pyramid = new ZoomPyramid(picture.getBufferedImage());
+    showZoomedImage();
+    repaint();
+  }
+  
+  /**
+   * Method to show in the title how much of the filter is done
+   */
+  private void showProgress()
+  {
+    if (progress == null)
+      return;
+    String title = picture.getTitle();
+    if (cancelItem.isEnabled())
+      title = title + " - " + (int) (100 * progress.getFraction()) + "% done";
+    else if (progress.isCancelled())
+      title = title + " - cancelled";
+    pictureFrame.setTitle(title);
+  }
+  
+  /**
+   * Method to stop following the filter when it is done
+   * @param wasCancelled true if it was cancelled
+   */
+  private void filterFinished(boolean wasCancelled)
+  {
+    cancelItem.setEnabled(false);
+    showProgress();
+    repaint();
+  }
+  
+  /**
+   * Class that opens an explorer when a filter has done part of its
+   * picture and keeps it up to date as the filter runs.  The filter's
+   * threads only note what is done; the explorer is changed on the
+   * event dispatch thread at most once a frame (see RepaintScheduler).
+   */
+  private static class PreviewListener implements FilterProgress.Listener
+  {
+    private final FilterProgress progress;
+    
+    /** the picture being made (guarded by this) */
+    private SimplePicture target;
+    
+    /** the part of target done since the last update (guarded by this) */
+    private Rectangle done;
+    
+    /** null until the filter finishes, then true if it was cancelled (guarded by this) */
+    private Boolean cancelled;
+    
+    /** the explorer and the picture it shows (only used on the event thread) */
+    private PictureExplorer explorer;
+    private SimplePicture shown;
+    private boolean shownFinished;
+    
+    PreviewListener(FilterProgress progress)
+    {
+      this.progress = progress;
+    }
+    
+    public void regionDone(SimplePicture target, int x0, int y0, int x1, int y1)
+    {
+      Rectangle region = new Rectangle(x0, y0, x1 - x0, y1 - y0);
+      synchronized (this)
+      {
+        if (target != this.target || done == null)
+          done = region;
+        else
+          done = done.union(region);
+        this.target = target;
+      }
+      RepaintScheduler.getDefault().schedule(this, null, this::update);
+    }
+    
+    public void finished(boolean wasCancelled)
+    {
+      synchronized (this)
+      {
+        cancelled = wasCancelled;
+      }
+      RepaintScheduler.getDefault().schedule(this, null, this::update);
+    }
+    
+    /**
+     * Method to show what the filter has done since the last update.
+     * This runs on the event dispatch thread.
+     */
+    private void update()
+    {
+      SimplePicture newTarget;
+      Rectangle region;
+      Boolean wasCancelled;
+      synchronized (this)
+      {
+        newTarget = target;
+        region = done;
+        done = null;
+        wasCancelled = cancelled;
+      }
+      if (newTarget == null)
+        return;
+      
+      if (explorer == null)
+      {
+        explorer = new PictureExplorer(newTarget);
+        explorer.watch(progress);
+      }
+      else if (newTarget != shown)
+        explorer.setPicture(newTarget);
+      else if (region != null)
+        explorer.pictureChanged(region);
+      shown = newTarget;
+      
+      if (wasCancelled != null && !shownFinished)
+      {
+        explorer.filterFinished(wasCancelled);
+        shownFinished = true;
+      }
+    }
   }
   
   //****************************************//
@@ -689,6 +984,21 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     fiveHundred.setEnabled(true);
   }
   
+  /**
+   * Method to set how the picture is scaled when zoomed and enable
+   * the other scaling menu items
+   * @param hint the RenderingHints.KEY_INTERPOLATION value to use
+   * @param item the menu item for it
+   */
+  private void setInterpolation(Object hint, JMenuItem item)
+  {
+    imageDisplay.setInterpolation(hint);
+    nearest.setEnabled(true);
+    bilinear.setEnabled(true);
+    bicubic.setEnabled(true);
+    item.setEnabled(false);
+  }
+  
   /**
    * Controls the zoom menu bar
    *
@@ -702,6 +1012,20 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
       this.repaint();
     }
     
+    if(a.getActionCommand().equals("Cancel") && progress != null)
+    {
+      progress.cancel();
+    }
+    
+    if(a.getActionCommand().equals("Nearest Neighbor"))
+      setInterpolation(RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR, nearest);
+    
+    if(a.getActionCommand().equals("Bilinear"))
+      setInterpolation(RenderingHints.VALUE_INTERPOLATION_BILINEAR, bilinear);
+    
+    if(a.getActionCommand().equals("Bicubic"))
+      setInterpolation(RenderingHints.VALUE_INTERPOLATION_BICUBIC, bicubic);
+    
     if(a.getActionCommand().equals("25%"))
     {
       this.zoom(.25);
@@ -1,8 +1,13 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 
 /**
- * Class that holds a digital picture and displays it using a JFrame
+ * Class that holds a digital picture and displays it using a JFrame.
+ * Repaints (and show after the first time) go through the
+ * RepaintScheduler: requests in the same frame are joined, the picture
+ * is copied into an image made for the screen off the event thread,
+ * and the copy is swapped in on the event thread.
  * 
  * @author Barb Ericson 
  */
@@ -23,6 +28,15 @@ public class PictureFrame
   /** Digital Picture to display */
   private DigitalPicture picture;
   
+  /** the copy of the picture made off the event thread to show next */
+  private volatile BufferedImage prepared;
+  
+  /** the copy being shown (null if the picture itself is shown) */
+  private BufferedImage shown;
+  
+  /** a copy that isn't shown any more and can be drawn into again */
+  private volatile BufferedImage spare;
+  
   ///////////////// constructors ////////////////////////
   
   /**
@@ -87,11 +101,82 @@ public class PictureFrame
    */
   public void updateImageAndShowIt()
   {
-    // first update the image
-    updateImage();
+    // the scheduler updates the image and shows the frame
+    scheduleRepaint();
+  }
+  
+  /**
+   * Method to ask the repaint scheduler to copy the picture and show
+   * the copy within about a frame.  This returns right away.
+   */
+  private void scheduleRepaint()
+  {
+    RepaintScheduler.getDefault().schedule(this, this::prepareImage, 
+                                           this::showPreparedImage);
+  }
+  
+  /**
+   * Method to copy the picture into an image made for the screen.  This
+   * is run off the event thread by the repaint scheduler.
+   */
+  private void prepareImage()
+  {
+    if (picture == null)
+      return;
+    Image image = picture.getImage();
+    int width = image.getWidth(null);
+    int height = image.getHeight(null);
+    if (width < 1 || height < 1)
+      return;
+    boolean hasAlpha = image instanceof BufferedImage && 
+      ((BufferedImage) image).getColorModel().hasAlpha();
+    int transparency = hasAlpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE;
     
-    // now make sure it is shown
+    // draw into the copy that isn't shown if it is the right kind
+    BufferedImage copy = spare;
+    spare = null;
+    if (copy == null || copy.getWidth() != width || copy.getHeight() != height ||
+        copy.getTransparency() != transparency)
+    {
+      GraphicsConfiguration config = frame.getGraphicsConfiguration();
+      if (config != null)
+        copy = config.createCompatibleImage(width, height, transparency);
+      else
+        copy = new BufferedImage(width, height, hasAlpha ? BufferedImage.TYPE_INT_ARGB
+                                   : BufferedImage.TYPE_INT_RGB);
+    }
+    Graphics2D g2 = copy.createGraphics();
+    g2.setComposite(AlphaComposite.Src);
+    g2.drawImage(image, 0, 0, null);
+    g2.dispose();
+    prepared = copy;
+  }
+  
+  /**
+   * Method to swap in the copy made by prepareImage and show the
+   * frame.  This is run on the event thread by the repaint scheduler.
+   */
+  private void showPreparedImage()
+  {
+    BufferedImage copy = prepared;
+    prepared = null;
+    if (copy != null)
+    {
+      Image old = imageIcon.getImage();
+      imageIcon.setImage(copy);
+      if (shown != null && shown != copy)
+        spare = shown;
+      shown = copy;
+      
+      // make the frame bigger or smaller if the picture changed size
+      if (old == null || old.getWidth(null) != copy.getWidth() || 
+          old.getHeight(null) != copy.getHeight())
+        frame.pack();
+    }
+    if (picture != null)
+      frame.setTitle(picture.getTitle());
     frame.setVisible(true);
+    label.repaint();
   }
   
   /**
@@ -138,19 +223,14 @@ public class PictureFrame
   }
   
   /**
-   * Method to force the picture frame to repaint (redraw)
+   * Method to force the picture frame to repaint (redraw).  The
+   * repaint happens within about a frame; calling this many times in
+   * that time only repaints once.
    */
   public void repaint()
   {
-    
-    // make it visible
-    frame.setVisible(true);
-    
-    // update the image from the picture
-    updateImage();
-    
-    // tell the JFrame to handle the repaint
-    frame.repaint();
+    // make it visible with the image from the picture
+    scheduleRepaint();
   }
   
   /**
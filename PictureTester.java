@@ -39,6 +39,14 @@ public class PictureTester {
     beach.explore();
   }
 
+  /** Method to test grayscale with the Rec. 709 luma weights */
+  public static void testGrayscaleRec709() {
+    Picture beach = new Picture("images/beach.jpg");
+    beach.explore();
+    beach.grayscale(GrayscaleMode.REC709);
+    beach.explore();
+  }
+
   /** Method to test fixUnderwater */
   public static void testFixUnderwater() {
     Picture water = new Picture("images/water.jpg");
@@ -55,6 +63,13 @@ public class PictureTester {
     beach.explore();
   }
 
+  /** Method to test a pipeline of filters */
+  public static void testPipeline() {
+    Picture beach = new Picture("images/beach.jpg");
+    beach.explore();
+    beach.pipeline().negate().grayscale().addWatermark().blur(5).run().explore();
+  }
+
   /** Method to test pixelate */
   public static void testPixelate(int size) {
     Picture beach = new Picture("images/beach.jpg");
@@ -70,6 +85,34 @@ public class PictureTester {
     beach.blur(size).explore();
   }
 
+  /**
+   * Method to time blur for a range of sizes on a generated picture.
+   * The blur uses running sums so the times should stay about the
+   * same as the size grows.
+   */
+  public static void testBlurRadiusSweep() {
+    Picture picture = new Picture(1500, 2000);
+    int[] pixels = picture.getPixelBuffer();
+    java.util.Random random = new java.util.Random(1);
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt();
+    }
+
+    // warm up so the first size isn't timed with the interpreter
+    for (int i = 0; i < 3; i++) {
+      picture.blur(5);
+    }
+
+    int[] sizes = { 2, 5, 10, 20, 40, 80, 160 };
+    for (int size : sizes) {
+      long start = System.nanoTime();
+      picture.blur(size);
+      long millis = (System.nanoTime() - start) / 1000000;
+      System.out.println("blur(" + size + ") on " + picture.getWidth() + "x"
+          + picture.getHeight() + ": " + millis + " ms");
+    }
+  }
+
   /** Method to test enhance */
   public static void testEnhance(int size) {
     Picture beach = new Picture("images/water.jpg");
@@ -77,6 +120,34 @@ public class PictureTester {
     beach.enhance(size).explore();
   }
 
+  /**
+   * Method to check that blur and enhance (which use running sums)
+   * give the same pixels as the versions that use an IntegralImage,
+   * for a generated picture and a range of sizes.
+   */
+  public static void testBlurMatchesSums() {
+    Picture picture = new Picture(203, 301);
+    int[] pixels = picture.getPixelBuffer();
+    java.util.Random random = new java.util.Random(1);
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt();
+    }
+    IntegralImage sums = new IntegralImage(picture);
+
+    int[] sizes = { 1, 2, 3, 5, 10, 20, 64, 400 };
+    for (int size : sizes) {
+      boolean blurSame = java.util.Arrays.equals(
+          picture.blur(size).getPixelBuffer(),
+          picture.blur(sums, size).getPixelBuffer());
+      boolean enhanceSame = java.util.Arrays.equals(
+          picture.enhance(size).getPixelBuffer(),
+          picture.enhance(sums, size).getPixelBuffer());
+      System.out.println("size " + size + ": blur "
+          + (blurSame ? "same" : "DIFFERENT") + ", enhance "
+          + (enhanceSame ? "same" : "DIFFERENT"));
+    }
+  }
+
   /** Method to test shiftHalfWidth */
   public static void testSwapLeftRight() {
     // Load an original picture
@@ -160,6 +231,116 @@ public class PictureTester {
     beach.rotate(degrees).explore();
   }
 
+  /**
+   * Method to test rotate(double angle, Interpolation interpolation)
+   * with bilinear sampling for smooth edges.
+   */
+  public static void testRotateBilinear(double degrees) {
+    Picture beach = new Picture("images/beach.jpg");
+    beach.rotate(degrees, Interpolation.BILINEAR).explore();
+  }
+
+  /**
+   * Method to test StreamingFilter.  Negates beach.jpg a band of rows
+   * at a time into a png file without loading the whole picture.
+   */
+  public static void testStreamingNegate() {
+    try {
+      new StreamingFilter(Picture.NEGATE).process("images/beach.jpg",
+                                                  "images/beach-negated.png");
+      new Picture("images/beach-negated.png").explore();
+    } catch (java.io.IOException ex) {
+      System.out.println(ex.getMessage());
+    }
+  }
+
+  /**
+   * Method to test writing into a relative directory with a dot in
+   * its name.  The format comes from the file's own extension, and a
+   * picture with alpha written as a jpg is written without the alpha.
+   */
+  public static void testWriteDottedDirectory() {
+    java.io.File dir = new java.io.File("out.test");
+    dir.mkdirs();
+    Picture beach = new Picture("images/beach.jpg");
+    Picture clear = new Picture(new java.awt.image.BufferedImage(50, 40,
+        java.awt.image.BufferedImage.TYPE_INT_ARGB));
+    try {
+      beach.writeOrFail("out.test/beach.png");
+      clear.writeOrFail("out.test/clear.jpg");
+      Picture png = new Picture("out.test/beach.png");
+      Picture jpg = new Picture("out.test/clear.jpg");
+      System.out.println("beach.png is " + png.getWidth() + "x" + png.getHeight()
+          + " (expected " + beach.getWidth() + "x" + beach.getHeight() + ")");
+      System.out.println("clear.jpg is " + jpg.getWidth() + "x" + jpg.getHeight()
+          + " (expected 50x40)");
+    } catch (java.io.IOException ex) {
+      System.out.println("Couldn't write: " + ex.getMessage());
+    }
+  }
+
+  /**
+   * Method to test raw picture files.  Writes beach.jpg as a raw
+   * .argb file and maps it back in without decoding.
+   */
+  public static void testRawPicture() {
+    Picture beach = new Picture("images/beach.jpg");
+    beach.write("images/beach.argb");
+    Picture raw = new Picture("images/beach.argb");
+    raw.negate();
+    raw.explore();
+  }
+
+  /**
+   * Method to test OffHeapPicture.  Loads beach.jpg into off-heap
+   * memory, negates it in place, and explores a copy.
+   */
+  public static void testOffHeapNegate() {
+    try (OffHeapPicture beach = new OffHeapPicture("images/beach.jpg")) {
+      beach.apply(Picture.NEGATE);
+      beach.explore();
+    } catch (java.io.IOException ex) {
+      System.out.println(ex.getMessage());
+    }
+  }
+
+  /**
+   * Method to test PictureCache.  Loads beach.jpg twice (the second
+   * time comes from the cache), negates one, and explores both.
+   */
+  public static void testPictureCache() {
+    Picture first = new Picture("images/beach.jpg");
+    Picture second = new Picture("images/beach.jpg");
+    first.negate();
+    System.out.println(PictureCache.getDefault());
+    first.explore();
+    second.explore();
+  }
+
+  /**
+   * Method to test loadThumbnail.  Reads a small copy of beach.jpg
+   * that fits in 100 by 100 and explores it.
+   */
+  public static void testThumbnail() {
+    try {
+      Picture thumbnail = SimplePicture.loadThumbnail("images/beach.jpg", 100, 100);
+      thumbnail.explore();
+    } catch (java.io.IOException ex) {
+      System.out.println(ex.getMessage());
+    }
+  }
+
+  /**
+   * Method to test runWithPreview.  Shows beach.jpg being blurred
+   * a band at a time; use Filter > Cancel to stop it.
+   */
+  public static void testBlurPreview() {
+    Picture beach = new Picture("images/beach.jpg");
+    Picture blurred = PictureExplorer.runWithPreview(() -> beach.blur(50));
+    if (blurred == null)
+      System.out.println("The blur was cancelled");
+  }
+
   /**
    * Main method for testing. Every class can have a main
    * method in Java
@@ -174,11 +355,15 @@ public class PictureTester {
     // testKeepOnlyGreen();
     // testNegate();
     // testGrayscale();
+    // testGrayscaleRec709();
     // testPixelate(5);
     // testBlur(20);
+    // testBlurRadiusSweep();
     // testEnhance(20);
+    // testBlurMatchesSums();
     // testFixUnderwater();
     // testAddWatermark();
+    // testPipeline();
     // testSwapLeftRight();
     // testStairStep(1, 400);
     // testLiquify(100);
@@ -194,6 +379,14 @@ public class PictureTester {
     // testEdgeDetectionBelow(20);
     // testGreenScreen();
     // testRotate(45);
+    // testRotateBilinear(3);
+    // testStreamingNegate();
+    // testWriteDottedDirectory();
+    // testRawPicture();
+    // testOffHeapNegate();
+    // testPictureCache();
+    // testThumbnail();
+    // testBlurPreview();
     // testEdgeDetection2();
     // testChromakey();
     // testEncodeAndDecode();
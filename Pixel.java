@@ -92,6 +92,17 @@ public class Pixel
     
     return alpha;
   }
+  
+  /**
+   * Method to get the alpha value from a pixel represented as an int
+   * @param value the color value as an int
+   * @return the amount of alpha
+   */
+  public static int getAlpha(int value)
+  {
+    int alpha = (value >> 24) & 0xff;
+    return alpha;
+  }
     
   
   /**
@@ -186,6 +197,77 @@ public class Pixel
     return blue;
   }
   
+  /**
+   * Method to make a pixel value as an int from alpha, red, green, and
+   * blue values that are already within 0 to 255
+   * @param alpha the amount of alpha
+   * @param red the amount of red
+   * @param green the amount of green
+   * @param blue the amount of blue
+   * @return the color value as an int (alpha, red, green, blue)
+   */
+  public static int makeARGB(int alpha, int red, int green, int blue)
+  {
+    return (alpha << 24) | (red << 16) | (green << 8) | blue;
+  }
+  
+  /**
+   * Method to make an opaque pixel value as an int from red, green, and
+   * blue values that are already within 0 to 255
+   * @param red the amount of red
+   * @param green the amount of green
+   * @param blue the amount of blue
+   * @return the color value as an int with an alpha of 255
+   */
+  public static int makeRGB(int red, int green, int blue)
+  {
+    return makeARGB(255, red, green, blue);
+  }
+  
+  /**
+   * Method to replace the red in a pixel value represented as an int
+   * @param value the color value as an int
+   * @param red the new red value (0 to 255)
+   * @return the color value with the new red
+   */
+  public static int withRed(int value, int red)
+  {
+    return (value & 0xff00ffff) | (red << 16);
+  }
+  
+  /**
+   * Method to replace the green in a pixel value represented as an int
+   * @param value the color value as an int
+   * @param green the new green value (0 to 255)
+   * @return the color value with the new green
+   */
+  public static int withGreen(int value, int green)
+  {
+    return (value & 0xffff00ff) | (green << 8);
+  }
+  
+  /**
+   * Method to replace the blue in a pixel value represented as an int
+   * @param value the color value as an int
+   * @param blue the new blue value (0 to 255)
+   * @return the color value with the new blue
+   */
+  public static int withBlue(int value, int blue)
+  {
+    return (value & 0xffffff00) | blue;
+  }
+  
+  /**
+   * Method to replace the alpha in a pixel value represented as an int
+   * @param value the color value as an int
+   * @param alpha the new alpha value (0 to 255)
+   * @return the color value with the new alpha
+   */
+  public static int withAlpha(int value, int alpha)
+  {
+    return (value & 0x00ffffff) | (alpha << 24);
+  }
+  
   /**
    * Method to get a color object that represents the color at this pixel.
    * @return a color object that represents the pixel color
@@ -237,7 +319,7 @@ public class Pixel
   public void updatePicture(int alpha, int red, int green, int blue)
   {
     // create a 32 bit int with alpha, red, green blue from left to right
-    int value = (alpha << 24) + (red << 16) + (green << 8) + blue;
+    int value = makeARGB(alpha, red, green, blue);
     
     // update the picture with the int value
     picture.setBasicPixel(x,y,value);
@@ -245,10 +327,10 @@ public class Pixel
   
   /**
    * Method to correct a color value to be within 0 to 255
-   * @param the value to use
+   * @param value the value to use
    * @return a value within 0 to 255
    */
-  private static int correctValue(int value)
+  public static int correctValue(int value)
   {
     if (value < 0)
       value = 0;
@@ -266,8 +348,9 @@ public class Pixel
     // set the red value to the corrected value
     int red = correctValue(value);
     
-    // update the pixel value in the picture
-    updatePicture(getAlpha(), red, getGreen(), getBlue());
+    // read the pixel once and write it back once
+    int current = picture.getBasicPixel(x,y);
+    picture.setBasicPixel(x,y,withRed(current, red));
   } 
   
   /**
@@ -279,8 +362,9 @@ public class Pixel
     // set the green value to the corrected value
     int green = correctValue(value);
     
-    // update the pixel value in the picture
-    updatePicture(getAlpha(), getRed(), green, getBlue());
+    // read the pixel once and write it back once
+    int current = picture.getBasicPixel(x,y);
+    picture.setBasicPixel(x,y,withGreen(current, green));
   } 
   
   /**
@@ -292,8 +376,9 @@ public class Pixel
     // set the blue value to the corrected value
     int blue = correctValue(value);
     
-    // update the pixel value in the picture
-    updatePicture(getAlpha(), getRed(), getGreen(), blue);
+    // read the pixel once and write it back once
+    int current = picture.getBasicPixel(x,y);
+    picture.setBasicPixel(x,y,withBlue(current, blue));
   } 
   
    /**
@@ -305,10 +390,40 @@ public class Pixel
     // make sure that the alpha is from 0 to 255 
     int alpha = correctValue(value);
     
-    // update the associated picture
-    updatePicture(alpha, getRed(), getGreen(), getBlue());
+    // read the pixel once and write it back once
+    int current = picture.getBasicPixel(x,y);
+    picture.setBasicPixel(x,y,withAlpha(current, alpha));
   } 
   
+  /**
+   * Method to set the red, green, and blue at this pixel at once,
+   * keeping the current alpha.  This reads and writes the picture
+   * once instead of once per color.
+   * @param red the new red value
+   * @param green the new green value
+   * @param blue the new blue value
+   */
+  public void setRGB(int red, int green, int blue)
+  {
+    int alpha = picture.getBasicPixel(x,y) & 0xff000000;
+    picture.setBasicPixel(x,y,alpha | makeARGB(0, correctValue(red),
+                                               correctValue(green),
+                                               correctValue(blue)));
+  }
+  
+  /**
+   * Method to set the alpha, red, green, and blue at this pixel at once
+   * @param alpha the new alpha value
+   * @param red the new red value
+   * @param green the new green value
+   * @param blue the new blue value
+   */
+  public void setARGB(int alpha, int red, int green, int blue)
+  {
+    picture.setBasicPixel(x,y,makeARGB(correctValue(alpha), correctValue(red),
+                                       correctValue(green), correctValue(blue)));
+  }
+  
   /**
   * Method to get the distance between this pixel's color and the passed color
   * @param testColor the color to compare to
@@ -316,9 +431,10 @@ public class Pixel
   */
  public double colorDistance(Color testColor)
  {
-   double redDistance = this.getRed() - testColor.getRed();
-   double greenDistance = this.getGreen() - testColor.getGreen();
-   double blueDistance = this.getBlue() - testColor.getBlue();
+   int value = picture.getBasicPixel(x,y);
+   double redDistance = getRed(value) - testColor.getRed();
+   double greenDistance = getGreen(value) - testColor.getGreen();
+   double blueDistance = getBlue(value) - testColor.getBlue();
    double distance = Math.sqrt(redDistance * redDistance + 
                                greenDistance * greenDistance +
                                blueDistance * blueDistance);
@@ -348,7 +464,8 @@ public class Pixel
   */
  public double getAverage()
  {
-   double average = (getRed() + getGreen() + getBlue()) / 3.0;
+   int value = picture.getBasicPixel(x,y);
+   double average = (getRed(value) + getGreen(value) + getBlue(value)) / 3.0;
    return average;
  }
   
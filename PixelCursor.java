@@ -0,0 +1,337 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Class that walks over the pixels in a picture without creating
+ * a Pixel object for each one.  A pixel cursor is a single mutable
+ * object that points at one pixel (column x, row y) at a time.  You
+ * can move it to any location or step through the picture in
+ * row-major order, and get and set the red, green, blue, and alpha
+ * values at the current location.
+ *
+ * When the picture keeps its pixels in a packed int array (see
+ * SimplePicture.getPixelBuffer()) the cursor reads and writes the
+ * array directly.  Otherwise it uses getBasicPixel and setBasicPixel.
+ * A cursor from SimplePicture.getPixelCursorForReading() can only read,
+ * so it doesn't make the picture copy pixels it shares with the
+ * picture cache.  It keeps reading those shared pixels after the
+ * picture is changed and gets its own copy, so make a new cursor after
+ * changing the picture.
+ */
+public class PixelCursor
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the digital picture this cursor walks over */
+  private DigitalPicture picture;
+
+  /** the packed pixels of the picture or null if it isn't packed */
+  private int[] pixels;
+
+  /** true if the packed pixels have no alpha (TYPE_INT_RGB) */
+  private boolean opaque;
+
+  /** true if the cursor can't change the pixels */
+  private boolean readOnly;
+
+  /** the width of the picture */
+  private int width;
+
+  /** the height of the picture */
+  private int height;
+
+  /** the x (column) location of the cursor */
+  private int x;
+
+  /** the y (row) location of the cursor */
+  private int y;
+
+  /** the index of the current pixel in the packed pixels (y * width + x) */
+  private int index;
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * A constructor that takes the picture to walk over.  The cursor
+   * starts just before the first pixel so the first call to next()
+   * moves it to (0,0).
+   * @param picture the picture to walk over
+   */
+  public PixelCursor(DigitalPicture picture)
+  {
+    this(picture, false);
+  }
+
+  /**
+   * A constructor that takes the picture to walk over and whether the
+   * cursor may change it.  A read-only cursor over a SimplePicture reads
+   * the pixels without copying them first (see
+   * SimplePicture.getPixelBufferForReading()).
+   * @param picture the picture to walk over
+   * @param readOnly true if the cursor may only read the pixels
+   */
+  PixelCursor(DigitalPicture picture, boolean readOnly)
+  {
+    this.picture = picture;
+    this.width = picture.getWidth();
+    this.height = picture.getHeight();
+    this.readOnly = readOnly;
+
+    // use the packed pixel array if the picture has one
+    if (picture instanceof SimplePicture)
+    {
+      SimplePicture simplePicture = (SimplePicture) picture;
+      if (readOnly)
+        this.pixels = simplePicture.getPixelBufferForReading();
+      else
+        this.pixels = simplePicture.getPixelBuffer();
+      this.opaque = simplePicture.getBufferedImageForReading().getType() !=
+        BufferedImage.TYPE_INT_ARGB;
+    }
+
+    reset();
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to move the cursor back to just before the first pixel
+   */
+  public void reset()
+  {
+    x = -1;
+    y = 0;
+    index = -1;
+  }
+
+  /**
+   * Method to move the cursor to the next pixel in row-major order
+   * @return true if the cursor is on a pixel and false if it
+   * has moved past the last pixel
+   */
+  public boolean next()
+  {
+    x++;
+    index++;
+    if (x >= width)
+    {
+      x = 0;
+      y++;
+    }
+    return y < height;
+  }
+
+  /**
+   * Method to move the cursor to the given location
+   * @param x the x (column) location to move to
+   * @param y the y (row) location to move to
+   * @return this cursor so calls can be chained
+   */
+  public PixelCursor moveTo(int x, int y)
+  {
+    if (x < 0 || x >= width || y < 0 || y >= height)
+      throw new IndexOutOfBoundsException("(" + x + "," + y +
+                                          ") is outside the picture");
+    this.x = x;
+    this.y = y;
+    this.index = y * width + x;
+    return this;
+  }
+
+  /**
+   * Method to get the x location of the cursor
+   * @return the x (column) location of the cursor
+   */
+  public int getX() { return x; }
+
+  /**
+   * Method to get the y location of the cursor
+   * @return the y (row) location of the cursor
+   */
+  public int getY() { return y; }
+
+  /**
+   * Method to get the row (y value)
+   * @return the row (y value) of the cursor
+   */
+  public int getRow() { return y; }
+
+  /**
+   * Method to get the column (x value)
+   * @return the column (x value) of the cursor
+   */
+  public int getCol() { return x; }
+
+  /**
+   * Method to get the width of the picture the cursor walks over
+   * @return the width of the picture
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the picture the cursor walks over
+   * @return the height of the picture
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to get the value at the current pixel as an int
+   * @return the pixel value (alpha, red, green, blue)
+   */
+  public int getBasicPixel()
+  {
+    if (pixels == null)
+      return picture.getBasicPixel(x,y);
+    if (opaque)
+      return pixels[index] | 0xff000000;
+    return pixels[index];
+  }
+
+  /**
+   * Method to set the value at the current pixel from an int
+   * @param value the new pixel value (alpha, red, green, blue)
+   */
+  public void setBasicPixel(int value)
+  {
+    if (readOnly)
+      throw new UnsupportedOperationException("this pixel cursor can only read");
+    if (pixels == null)
+      picture.setBasicPixel(x,y,value);
+    else
+      pixels[index] = value;
+  }
+
+  /**
+   * Method to get the amount of alpha at the current pixel
+   * @return the amount of alpha from 0 to 255
+   */
+  public int getAlpha() { return (getBasicPixel() >> 24) & 0xff; }
+
+  /**
+   * Method to get the amount of red at the current pixel
+   * @return the amount of red from 0 to 255
+   */
+  public int getRed() { return (getBasicPixel() >> 16) & 0xff; }
+
+  /**
+   * Method to get the amount of green at the current pixel
+   * @return the amount of green from 0 to 255
+   */
+  public int getGreen() { return (getBasicPixel() >> 8) & 0xff; }
+
+  /**
+   * Method to get the amount of blue at the current pixel
+   * @return the amount of blue from 0 to 255
+   */
+  public int getBlue() { return getBasicPixel() & 0xff; }
+
+  /**
+   * Method to set the red, green, and blue at the current pixel
+   * keeping the current alpha.  Values are corrected to be
+   * within 0 to 255.
+   * @param red the new red value
+   * @param green the new green value
+   * @param blue the new blue value
+   */
+  public void setRGB(int red, int green, int blue)
+  {
+    int alpha = getBasicPixel() & 0xff000000;
+    setBasicPixel(alpha | Pixel.makeARGB(0, Pixel.correctValue(red),
+                                         Pixel.correctValue(green),
+                                         Pixel.correctValue(blue)));
+  }
+
+  /**
+   * Method to set the alpha, red, green, and blue at the current
+   * pixel.  Values are corrected to be within 0 to 255.
+   * @param alpha the new alpha value
+   * @param red the new red value
+   * @param green the new green value
+   * @param blue the new blue value
+   */
+  public void setARGB(int alpha, int red, int green, int blue)
+  {
+    setBasicPixel(Pixel.makeARGB(Pixel.correctValue(alpha), Pixel.correctValue(red),
+                                 Pixel.correctValue(green), Pixel.correctValue(blue)));
+  }
+
+  /**
+   * Method to set the red at the current pixel
+   * @param value the new red value
+   */
+  public void setRed(int value)
+  {
+    setBasicPixel(Pixel.withRed(getBasicPixel(), Pixel.correctValue(value)));
+  }
+
+  /**
+   * Method to set the green at the current pixel
+   * @param value the new green value
+   */
+  public void setGreen(int value)
+  {
+    setBasicPixel(Pixel.withGreen(getBasicPixel(), Pixel.correctValue(value)));
+  }
+
+  /**
+   * Method to set the blue at the current pixel
+   * @param value the new blue value
+   */
+  public void setBlue(int value)
+  {
+    setBasicPixel(Pixel.withBlue(getBasicPixel(), Pixel.correctValue(value)));
+  }
+
+  /**
+   * Method to set the alpha at the current pixel
+   * @param value the new alpha value
+   */
+  public void setAlpha(int value)
+  {
+    setBasicPixel(Pixel.withAlpha(getBasicPixel(), Pixel.correctValue(value)));
+  }
+
+  /**
+   * Method to copy the red, green, and blue from the pixel another
+   * cursor is on to the current pixel, keeping the current alpha.  This
+   * is the same as pixel.setColor(otherPixel.getColor()).
+   * @param other the cursor to copy the color from
+   */
+  public void copyColorFrom(PixelCursor other)
+  {
+    int alpha = getBasicPixel() & 0xff000000;
+    setBasicPixel(alpha | (other.getBasicPixel() & 0x00ffffff));
+  }
+
+  /**
+   * Method to get the distance between the color at the current pixel
+   * and the color at the pixel another cursor is on
+   * @param other the cursor on the pixel to compare to
+   * @return the distance between the two colors
+   */
+  public double colorDistance(PixelCursor other)
+  {
+    int value = getBasicPixel();
+    int otherValue = other.getBasicPixel();
+    double redDistance = ((value >> 16) & 0xff) - ((otherValue >> 16) & 0xff);
+    double greenDistance = ((value >> 8) & 0xff) - ((otherValue >> 8) & 0xff);
+    double blueDistance = (value & 0xff) - (otherValue & 0xff);
+    return Math.sqrt(redDistance * redDistance +
+                     greenDistance * greenDistance +
+                     blueDistance * blueDistance);
+  }
+
+  /**
+   * Method to return a string with information about the current pixel
+   * @return a string with information about the current pixel
+   */
+  public String toString()
+  {
+    return "PixelCursor row=" + getRow() +
+      " col=" + getCol() +
+      " red=" + getRed() +
+      " green=" + getGreen() +
+      " blue=" + getBlue();
+  }
+
+}
@@ -0,0 +1,28 @@
+/**
+ * Interface to describe a filter that changes each pixel on its own
+ * (a point operation).  The new value of a pixel can depend on its
+ * old value and its location but not on any other pixel, so the
+ * pixels can be changed in any order or at the same time.
+ */
+public interface PixelOperation
+{
+  /**
+   * Method to get the new value for a pixel
+   * @param value the current pixel value (alpha, red, green, blue)
+   * @param x the x (column) location of the pixel
+   * @param y the y (row) location of the pixel
+   * @return the new pixel value (alpha, red, green, blue)
+   */
+  public int apply(int value, int x, int y);
+
+  /**
+   * Method to make an operation that does this operation and then
+   * the passed one on each pixel
+   * @param next the operation to do after this one
+   * @return the combined operation
+   */
+  public default PixelOperation andThen(PixelOperation next)
+  {
+    return (value, x, y) -> next.apply(apply(value, x, y), x, y);
+  }
+}
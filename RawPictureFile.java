@@ -0,0 +1,272 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+/**
+ * Class that reads and writes pictures in a simple uncompressed file
+ * format (.argb files).  There is no decoding to do, so a raw file is
+ * opened by mapping it into memory and the picture can be used right
+ * away.  The mapping is read-only, so many programs can share the same
+ * file, and SimplePicture copies the pixels into its own array the
+ * first time they are changed.
+ *
+ * The file is a 16 byte header followed by one int per pixel in
+ * row-major order (alpha, red, green, blue from high byte to low):
+ * <pre>
+ *   bytes 0-3   the letters ARGB
+ *   byte  4     'B' if the ints are big-endian or 'L' if little-endian
+ *   byte  5     1 if the alpha values are used, 0 if the picture is opaque
+ *   bytes 6-7   zero
+ *   bytes 8-11  the width (in the byte order from byte 4)
+ *   bytes 12-15 the height (in the byte order from byte 4)
+ * </pre>
+ * Files are written in the byte order of the computer writing them.
+ * They are written to a new file next to the old one that then
+ * replaces it, so anyone who has the old file mapped keeps seeing the
+ * old pixels instead of a file that is changing (or shrinking) under
+ * them.  A replaced file keeps the old file's permissions and a new
+ * one can be read by everyone, so other programs can share it.  On
+ * Windows a file can't be replaced while it is still mapped.
+ */
+public class RawPictureFile
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the extension used for raw picture files */
+  public static final String EXTENSION = "argb";
+
+  /** the number of bytes before the first pixel */
+  public static final int HEADER_SIZE = 16;
+
+  /** the letters at the start of every raw picture file */
+  private static final byte[] MAGIC = { 'A', 'R', 'G', 'B' };
+
+  /** the number of bytes written at a time */
+  private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+  /** the permissions of a new file: the owner can write it, everyone can read it */
+  private static final Set<PosixFilePermission> NEW_FILE_PERMISSIONS =
+    PosixFilePermissions.fromString("rw-r--r--");
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to check if a file name has the raw picture extension
+   * @param fileName the file name to check
+   * @return true if the name ends in .argb (in any case)
+   */
+  public static boolean isRawFileName(String fileName)
+  {
+    return fileName.toLowerCase().endsWith("." + EXTENSION);
+  }
+
+  /**
+   * Method to map a raw picture file into memory.  The returned image
+   * reads its pixels straight from the file and can't be changed (use
+   * toHeapImage to get a copy that can).
+   * @param file the file to map
+   * @return a read-only image of the pixels in the file
+   * @throws IOException if the file can't be read or isn't a raw picture
+   */
+  public static BufferedImage map(File file) throws IOException
+  {
+    try (RandomAccessFile input = new RandomAccessFile(file, "r");
+         FileChannel channel = input.getChannel())
+    {
+      long fileSize = channel.size();
+      if (fileSize < HEADER_SIZE)
+        throw new IOException(file + " is too short to be a raw picture");
+
+      // the mapping stays valid after the channel is closed
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                            Math.min(fileSize, Integer.MAX_VALUE));
+      for (int i = 0; i < MAGIC.length; i++)
+      {
+        if (buffer.get(i) != MAGIC[i])
+          throw new IOException(file + " isn't a raw picture file");
+      }
+      byte order = buffer.get(4);
+      if (order == 'B')
+        buffer.order(ByteOrder.BIG_ENDIAN);
+      else if (order == 'L')
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+      else
+        throw new IOException(file + " has an unknown byte order");
+      boolean hasAlpha = buffer.get(5) != 0;
+      int width = buffer.getInt(8);
+      int height = buffer.getInt(12);
+      if (width <= 0 || height <= 0 ||
+          HEADER_SIZE + 4L * width * height != fileSize)
+        throw new IOException(file + " has the wrong size for a " +
+                              width + " by " + height + " raw picture");
+
+      buffer.position(HEADER_SIZE);
+      IntBuffer pixels = buffer.slice().order(buffer.order()).asIntBuffer();
+      return IntBufferDataBuffer.createImage(pixels, width, height, hasAlpha);
+    }
+  }
+
+  /**
+   * Method to write the pixels of a picture to a raw picture file
+   * @param picture the picture to write
+   * @param file the file to write to
+   * @throws IOException if the file can't be written
+   */
+  public static void write(SimplePicture picture, File file) throws IOException
+  {
+    int[] pixels = picture.getPixelBufferForReading();
+    boolean hasAlpha = picture.getBufferedImageForReading().getColorModel().hasAlpha();
+    write(IntBuffer.wrap(pixels), picture.getWidth(), picture.getHeight(), hasAlpha, file);
+  }
+
+  /**
+   * Method to write packed pixels to a raw picture file
+   * @param pixels the width * height pixels in row-major order
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param hasAlpha true if the alpha values are used
+   * @param file the file to write to
+   * @throws IOException if the file can't be written
+   */
+  public static void write(IntBuffer pixels, int width, int height, boolean hasAlpha,
+                           File file) throws IOException
+  {
+    long fileSize = HEADER_SIZE + 4L * width * height;
+    if (fileSize > Integer.MAX_VALUE)
+      throw new IOException("the picture is too big for a raw picture file");
+
+    Path target = file.getAbsoluteFile().toPath();
+    Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+    try
+    {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE))
+      {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        buffer.order(ByteOrder.nativeOrder());
+        buffer.put(MAGIC);
+        buffer.put((byte) (buffer.order() == ByteOrder.BIG_ENDIAN ? 'B' : 'L'));
+        buffer.put((byte) (hasAlpha ? 1 : 0));
+        buffer.put((byte) 0);
+        buffer.put((byte) 0);
+        buffer.putInt(width);
+        buffer.putInt(height);
+
+        IntBuffer source = pixels.duplicate();
+        source.clear().limit(width * height);
+        while (source.hasRemaining())
+        {
+          IntBuffer chunk = buffer.asIntBuffer();
+          int count = Math.min(chunk.remaining(), source.remaining());
+          IntBuffer part = source.duplicate();
+          part.limit(part.position() + count);
+          chunk.put(part);
+          source.position(source.position() + count);
+          buffer.position(buffer.position() + 4 * count);
+          writeFully(channel, buffer);
+        }
+        if (buffer.position() > 0)
+          writeFully(channel, buffer);
+        channel.force(false);
+      }
+      setPermissions(temp, target);
+      try
+      {
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch (AccessDeniedException ex)
+      {
+        throw new IOException(file + " could not be replaced. It may be read-only, or (on " +
+                              "Windows) still mapped by a picture that was loaded from it.", ex);
+      }
+    }
+    finally
+    {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Method to give the temporary file the permissions the file it
+   * replaces has (or NEW_FILE_PERMISSIONS for a new file), since
+   * temporary files are made readable only by their owner.  File
+   * systems without POSIX permissions (like Windows) are left alone.
+   * @param temp the temporary file
+   * @param target the file it will replace
+   * @throws IOException if the permissions can't be read or set
+   */
+  private static void setPermissions(Path temp, Path target) throws IOException
+  {
+    PosixFileAttributeView view = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+    if (view == null)
+      return;
+    Set<PosixFilePermission> permissions = NEW_FILE_PERMISSIONS;
+    if (Files.exists(target))
+      permissions = Files.getPosixFilePermissions(target);
+    view.setPermissions(permissions);
+  }
+
+  /**
+   * Method to write everything in a buffer to a channel and empty the
+   * buffer for more
+   * @param channel the channel to write to
+   * @param buffer the buffer to write (from 0 to its position)
+   * @throws IOException if the channel can't be written
+   */
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+  {
+    buffer.flip();
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+    buffer.clear();
+  }
+
+  /**
+   * Method to check if an image was made by map
+   * @param image the image to check
+   * @return true if the image reads its pixels from a mapped file
+   */
+  public static boolean isMapped(BufferedImage image)
+  {
+    DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+    return dataBuffer instanceof IntBufferDataBuffer &&
+      ((IntBufferDataBuffer) dataBuffer).getBuffer().isReadOnly();
+  }
+
+  /**
+   * Method to copy an image made by map into a new packed int image
+   * that can be changed
+   * @param image the mapped image
+   * @return a TYPE_INT_ARGB or TYPE_INT_RGB copy of the image
+   */
+  public static BufferedImage toHeapImage(BufferedImage image)
+  {
+    int type = BufferedImage.TYPE_INT_RGB;
+    if (image.getColorModel().hasAlpha())
+      type = BufferedImage.TYPE_INT_ARGB;
+    BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), type);
+    int[] pixels = ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
+    IntBuffer mapped = ((IntBufferDataBuffer) image.getRaster().getDataBuffer()).getBuffer();
+    mapped.duplicate().get(pixels);
+    return copy;
+  }
+
+}
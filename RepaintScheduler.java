@@ -0,0 +1,216 @@
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
+
+/**
+ * Class that repaints windows at most once a frame.  A repaint is
+ * asked for with schedule, which returns right away.  Asking again for
+ * the same window before the frame is up just replaces the earlier
+ * request, so a filter that shows its picture after every row only
+ * costs one repaint a frame.
+ *
+ * Each repaint has two parts: prepare runs on the scheduler's own
+ * thread (for example to copy the picture into an image the screen can
+ * draw quickly) and show runs after it on the event dispatch thread
+ * (to swap the prepared image in).  A window isn't prepared again
+ * until its last show has run, so a busy event thread is never
+ * flooded and the thread asking for repaints never waits for Swing.
+ */
+public class RepaintScheduler
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the time between repaints of a window by default (about 60 a second) */
+  public static final long DEFAULT_FRAME_MILLIS = 16;
+
+  /** the scheduler used by PictureFrame and PictureExplorer */
+  private static RepaintScheduler defaultScheduler;
+
+  /** the time between repaints in milliseconds */
+  private final long frameMillis;
+
+  /** the thread that prepares repaints */
+  private final ScheduledExecutorService executor;
+
+  /** the latest request for each window that hasn't been prepared yet */
+  private final Map<Object, Request> pending = new LinkedHashMap<Object, Request>();
+
+  /** the windows that are prepared but not shown yet */
+  private final Set<Object> showing = new HashSet<Object>();
+
+  /** true if a flush is waiting to run */
+  private boolean flushScheduled;
+
+  /** the number of times schedule was called */
+  private final AtomicLong requestCount = new AtomicLong();
+
+  /** the number of repaints that were done */
+  private final AtomicLong repaintCount = new AtomicLong();
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * Constructor that takes the time between repaints
+   * @param frameMillis the time between repaints of a window in
+   * milliseconds (at least 1)
+   */
+  public RepaintScheduler(long frameMillis)
+  {
+    if (frameMillis < 1)
+      throw new IllegalArgumentException("frameMillis must be at least 1: " + frameMillis);
+    this.frameMillis = frameMillis;
+    this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "picture-repaint");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to get the scheduler used by PictureFrame and PictureExplorer
+   * @return the default repaint scheduler
+   */
+  public static synchronized RepaintScheduler getDefault()
+  {
+    if (defaultScheduler == null)
+      defaultScheduler = new RepaintScheduler(DEFAULT_FRAME_MILLIS);
+    return defaultScheduler;
+  }
+
+  /**
+   * Method to get the time between repaints
+   * @return the frame time in milliseconds
+   */
+  public long getFrameMillis() { return frameMillis; }
+
+  /**
+   * Method to get the number of repaints asked for
+   * @return the number of times schedule was called
+   */
+  public long getRequestCount() { return requestCount.get(); }
+
+  /**
+   * Method to get the number of repaints done.  This is less than the
+   * number asked for when requests were joined.
+   * @return the number of repaints shown
+   */
+  public long getRepaintCount() { return repaintCount.get(); }
+
+  /**
+   * Method to ask for a window to be repainted within about a frame.
+   * This returns right away.
+   * @param target the window (requests for the same one are joined)
+   * @param prepare the work to do off the event thread (or null)
+   * @param show the work to do on the event thread after prepare
+   */
+  public void schedule(Object target, Runnable prepare, Runnable show)
+  {
+    requestCount.incrementAndGet();
+    synchronized (this)
+    {
+      pending.put(target, new Request(prepare, show));
+      scheduleFlush();
+    }
+  }
+
+  /**
+   * Method to start a flush in a frame if one isn't already waiting.
+   * The caller must hold the lock.
+   */
+  private void scheduleFlush()
+  {
+    if (flushScheduled || pending.isEmpty())
+      return;
+    flushScheduled = true;
+    executor.schedule(this::flush, frameMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Method to prepare every window that is waiting and hand it to the
+   * event thread to show.  Windows whose last show hasn't run yet wait
+   * for the next frame.  A window whose prepare fails isn't shown.
+   */
+  private void flush()
+  {
+    Map<Object, Request> ready = new LinkedHashMap<Object, Request>();
+    synchronized (this)
+    {
+      flushScheduled = false;
+      Iterator<Map.Entry<Object, Request>> entries = pending.entrySet().iterator();
+      while (entries.hasNext())
+      {
+        Map.Entry<Object, Request> entry = entries.next();
+        if (showing.add(entry.getKey()))
+        {
+          ready.put(entry.getKey(), entry.getValue());
+          entries.remove();
+        }
+      }
+      scheduleFlush();
+    }
+
+    for (Map.Entry<Object, Request> entry : ready.entrySet())
+    {
+      Object target = entry.getKey();
+      Request request = entry.getValue();
+      try
+      {
+        if (request.prepare != null)
+          request.prepare.run();
+      }
+      catch (RuntimeException ex)
+      {
+        // don't show a window that wasn't prepared
+        System.err.println("Couldn't prepare repaint: " + ex);
+        doneShowing(target);
+        continue;
+      }
+      SwingUtilities.invokeLater(() -> {
+        try
+        {
+          request.show.run();
+          repaintCount.incrementAndGet();
+        }
+        finally
+        {
+          doneShowing(target);
+        }
+      });
+    }
+  }
+
+  /**
+   * Method to let a window be prepared again in the next flush
+   * @param target the window that was shown (or failed to prepare)
+   */
+  private synchronized void doneShowing(Object target)
+  {
+    showing.remove(target);
+  }
+
+  /**
+   * Class that is one repaint waiting to be done
+   */
+  private static class Request
+  {
+    private final Runnable prepare;
+    private final Runnable show;
+
+    Request(Runnable prepare, Runnable show)
+    {
+      this.prepare = prepare;
+      this.show = show;
+    }
+  }
+
+}
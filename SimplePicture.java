@@ -1,9 +1,24 @@
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import javax.swing.ImageIcon;
 import java.awt.*;
 import java.io.*;
 import java.awt.geom.*;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 /**
  * A class that represents a simple picture.  A simple picture may have
@@ -11,6 +26,12 @@ import java.awt.geom.*;
  * width, and height.  A simple picture uses a BufferedImage to 
  * hold the pixels.  You can show a simple picture in a 
  * PictureFrame (a JFrame).  You can also explore a simple picture.
+ * Pictures are kept in packed int (TYPE_INT_RGB or TYPE_INT_ARGB)
+ * images so filters can work directly on the pixel buffer.
+ * Pictures loaded from raw (.argb) files read their pixels from the
+ * mapped file until they are first changed (see RawPictureFile).
+ * Other pictures loaded from files share their decoded image with the
+ * picture cache until they are first changed (see PictureCache).
  * 
  * @author Barb Ericson ericson@cc.gatech.edu
  */
@@ -19,6 +40,12 @@ public class SimplePicture implements DigitalPicture
   
   /////////////////////// Fields /////////////////////////
   
+  /**
+   * the most pictures loadAll reads at the same time by default
+   */
+  public static final int DEFAULT_MAX_CONCURRENT_LOADS = 
+    Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+  
   /**
    * the file name associated with the simple picture
    */
@@ -34,6 +61,18 @@ public class SimplePicture implements DigitalPicture
    */
   private BufferedImage bufferedImage;
   
+  /**
+   * the packed pixel array backing the buffered image (one int per
+   * pixel in row-major order) or null if the image isn't packed
+   */
+  private int[] pixels;
+  
+  /**
+   * true if the buffered image is shared with the picture cache, so it
+   * must be copied before it is changed
+   */
+  private boolean shared;
+  
   /**
    * frame used to display the simple picture
    */
@@ -82,6 +121,7 @@ public class SimplePicture implements DigitalPicture
  public  SimplePicture(int width, int height)
  {
    bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+   pixels = packedData(bufferedImage);
    title = "None";
    fileName = "None";
    extension = "jpg";
@@ -119,6 +159,7 @@ public class SimplePicture implements DigitalPicture
    {
      this.bufferedImage = new BufferedImage(copyPicture.getWidth(),
                                             copyPicture.getHeight(), BufferedImage.TYPE_INT_RGB);
+     this.pixels = packedData(this.bufferedImage);
      this.copyPicture(copyPicture);
    }
  }
@@ -130,11 +171,26 @@ public class SimplePicture implements DigitalPicture
  public SimplePicture(BufferedImage image)
  {
    this.bufferedImage = image;
+   this.pixels = packedData(image);
    title = "None";
    fileName = "None";
    extension = "jpg";
  }
  
+ /**
+  * A constructor that reads the picture from a file that was already
+  * found, throwing an exception if it can't be read (used by
+  * loadPicture).  The file name is used as the title.
+  * @param file the file to read
+  * @param fileName the file name the file was found from
+  * @throws IOException if the file can't be read
+  */
+ SimplePicture(File file, String fileName) throws IOException
+ {
+   useFileName(fileName);
+   readFile(file);
+ }
+ 
  ////////////////////////// Methods //////////////////////////////////
  
  /**
@@ -151,25 +207,23 @@ public class SimplePicture implements DigitalPicture
   */
  public void copyPicture(SimplePicture sourcePicture)
  {
-   Pixel sourcePixel = null;
-   Pixel targetPixel = null;
+   int[] sourcePixels = sourcePicture.getPixelBufferForReading();
+   int[] targetPixels = this.getPixelBuffer();
+   int sourceWidth = sourcePicture.getWidth();
+   int targetWidth = this.getWidth();
+   int width = Math.min(sourceWidth, targetWidth);
+   int height = Math.min(sourcePicture.getHeight(), this.getHeight());
    
-   // loop through the columns
-   for (int sourceX = 0, targetX = 0; 
-        sourceX < sourcePicture.getWidth() &&
-        targetX < this.getWidth();
-        sourceX++, targetX++)
+   // loop through the rows
+   for (int y = 0; y < height; y++)
    {
-     // loop through the rows
-     for (int sourceY = 0, targetY = 0; 
-          sourceY < sourcePicture.getHeight() && 
-          targetY < this.getHeight();
-          sourceY++, targetY++)
-     {
-       sourcePixel = sourcePicture.getPixel(sourceX,sourceY);
-       targetPixel = this.getPixel(targetX,targetY);
-       targetPixel.setColor(sourcePixel.getColor());
-     }
+     int sourceIndex = y * sourceWidth;
+     int targetIndex = y * targetWidth;
+     
+     // copy the color but keep the target's alpha
+     for (int x = 0; x < width; x++, sourceIndex++, targetIndex++)
+       targetPixels[targetIndex] = (targetPixels[targetIndex] & 0xff000000) |
+                                   (sourcePixels[sourceIndex] & 0x00ffffff);
    }
    
  }
@@ -180,15 +234,12 @@ public class SimplePicture implements DigitalPicture
   */
  public void setAllPixelsToAColor(Color color)
  {
-   // loop through all x
-   for (int x = 0; x < this.getWidth(); x++)
-   {
-     // loop through all y
-     for (int y = 0; y < this.getHeight(); y++)
-     {
-       getPixel(x,y).setColor(color);
-     }
-   }
+   int[] pixelArray = getPixelBuffer();
+   int rgb = color.getRGB() & 0x00ffffff;
+   
+   // keep each pixel's alpha and replace the color
+   for (int i = 0; i < pixelArray.length; i++)
+     pixelArray[i] = (pixelArray[i] & 0xff000000) | rgb;
  }
  
  /**
@@ -197,15 +248,144 @@ public class SimplePicture implements DigitalPicture
   */
  public BufferedImage getBufferedImage() 
  {
+    makeWritable();
     return bufferedImage;
  }
  
+ /**
+  * Method to get the buffered image to read from.  Unlike
+  * getBufferedImage, pixels shared with the picture cache or mapped
+  * from a raw picture file aren't copied first, so the image must not
+  * be changed.
+  * @return the buffered image (don't change it)
+  */
+ BufferedImage getBufferedImageForReading()
+ {
+   return bufferedImage;
+ }
+ 
+ /**
+  * Method to get the packed pixel array behind this picture.  There
+  * is one int per pixel in row-major order (index y * width + x) holding
+  * alpha, red, green and blue from left to right.  Writing to the array
+  * changes the picture.  For TYPE_INT_RGB pictures the alpha byte is
+  * ignored.  If the buffered image isn't packed it is converted once.
+  * @return the pixel array for this picture
+  */
+ public int[] getPixelBuffer()
+ {
+   if (shared)
+     makeWritable();
+   if (pixels == null)
+   {
+     pixels = packedData(bufferedImage);
+     if (pixels == null)
+     {
+       // a mapped raw picture is copied with a bulk get, not drawn
+       if (RawPictureFile.isMapped(bufferedImage))
+         bufferedImage = RawPictureFile.toHeapImage(bufferedImage);
+       else
+         bufferedImage = toPackedImage(bufferedImage);
+       pixels = packedData(bufferedImage);
+     }
+   }
+   return pixels;
+ }
+ 
+ /**
+  * Method to get the packed pixel array to read from.  This is the
+  * same as getPixelBuffer except that a picture sharing its pixels
+  * with the picture cache isn't copied first, so the array must not
+  * be changed.
+  * @return the pixel array for this picture (don't change it)
+  */
+ int[] getPixelBufferForReading()
+ {
+   if (shared)
+     return pixels;
+   return getPixelBuffer();
+ }
+ 
+ /**
+  * Method to copy the pixels before they are changed if they are
+  * shared with the picture cache, or are in a raw picture file that
+  * is mapped read-only
+  */
+ private void makeWritable()
+ {
+   if (shared)
+   {
+     BufferedImage copy = new BufferedImage(bufferedImage.getWidth(),
+                                            bufferedImage.getHeight(),
+                                            bufferedImage.getType());
+     int[] copyPixels = packedData(copy);
+     System.arraycopy(pixels, 0, copyPixels, 0, pixels.length);
+     bufferedImage = copy;
+     pixels = copyPixels;
+     shared = false;
+   }
+   else if (pixels == null && RawPictureFile.isMapped(bufferedImage))
+     getPixelBuffer();
+ }
+ 
+ /**
+  * Method to get the data array of a packed int image whose
+  * rows are stored one after another with no padding
+  * @param image the image to check
+  * @return the data array or null if the image isn't laid out that way
+  */
+ private static int[] packedData(BufferedImage image)
+ {
+   int type = image.getType();
+   if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB)
+     return null;
+   
+   WritableRaster raster = image.getRaster();
+   if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel) ||
+       !(raster.getDataBuffer() instanceof DataBufferInt))
+     return null;
+   SinglePixelPackedSampleModel sampleModel = 
+     (SinglePixelPackedSampleModel) raster.getSampleModel();
+   DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+   
+   // child rasters and padded rows can't be indexed as y * width + x
+   if (sampleModel.getScanlineStride() != image.getWidth() ||
+       raster.getSampleModelTranslateX() != 0 ||
+       raster.getSampleModelTranslateY() != 0 ||
+       dataBuffer.getOffset() != 0)
+     return null;
+   
+   return dataBuffer.getData();
+ }
+ 
+ /**
+  * Method to copy an image into a new packed int image, keeping
+  * the alpha if the image has any
+  * @param image the image to convert
+  * @return a TYPE_INT_ARGB or TYPE_INT_RGB copy of the image
+  */
+ static BufferedImage toPackedImage(BufferedImage image)
+ {
+   int type = BufferedImage.TYPE_INT_RGB;
+   if (image.getColorModel().hasAlpha())
+     type = BufferedImage.TYPE_INT_ARGB;
+   BufferedImage packed = new BufferedImage(image.getWidth(), image.getHeight(), type);
+   
+   // replace (don't blend) so the alpha values are copied as is
+   Graphics2D graphics2d = packed.createGraphics();
+   graphics2d.setComposite(AlphaComposite.Src);
+   graphics2d.drawImage(image,0,0,null);
+   graphics2d.dispose();
+   return packed;
+ }
+ 
  /**
   * Method to get a graphics object for this picture to use to draw on
   * @return a graphics object to use for drawing
   */
  public Graphics getGraphics()
  {
+   makeWritable();
    return bufferedImage.getGraphics();
  }
  
@@ -215,6 +395,7 @@ public class SimplePicture implements DigitalPicture
   */
  public Graphics2D createGraphics()
  {
+   makeWritable();
    return bufferedImage.createGraphics();
  }
  
@@ -297,7 +478,17 @@ public class SimplePicture implements DigitalPicture
   */
  public int getBasicPixel(int x, int y)
  {
-    return bufferedImage.getRGB(x,y);
+   int width = bufferedImage.getWidth();
+   if (pixels != null && x >= 0 && x < width)
+   {
+     int value = pixels[y * width + x];
+     
+     // the color model reports opaque alpha for TYPE_INT_RGB
+     if (bufferedImage.getType() == BufferedImage.TYPE_INT_RGB)
+       value = value | 0xff000000;
+     return value;
+   }
+   return bufferedImage.getRGB(x,y);
  }
     
  /** 
@@ -308,7 +499,12 @@ public class SimplePicture implements DigitalPicture
   */     
  public void setBasicPixel(int x, int y, int rgb)
  {
-   bufferedImage.setRGB(x,y,rgb);
+   makeWritable();
+   int width = bufferedImage.getWidth();
+   if (pixels != null && x >= 0 && x < width)
+     pixels[y * width + x] = rgb;
+   else
+     bufferedImage.setRGB(x,y,rgb);
  }
   
  /**
@@ -361,6 +557,22 @@ public class SimplePicture implements DigitalPicture
    return pixelArray;
  }
  
+ /**
+  * Method to get a pixel cursor that can only read this picture.  It
+  * doesn't copy pixels the picture shares with the picture cache, so
+  * use it for pictures that are only looked at (like the picture being
+  * copied from).  Trying to change a pixel through it throws an
+  * UnsupportedOperationException.  The cursor reads the pixels the
+  * picture has when it is made, so don't keep it after changing the
+  * picture (the first change gives the picture its own copy, which the
+  * cursor doesn't see).  Get a new cursor instead.
+  * @return a read-only pixel cursor positioned before the first pixel
+  */
+ public PixelCursor getPixelCursorForReading()
+ {
+   return new PixelCursor(this, true);
+ }
+ 
  /**
   * Method to load the buffered image with the passed image
   * @param image  the image to use
@@ -368,7 +580,7 @@ public class SimplePicture implements DigitalPicture
  public void load(Image image)
  {
    // get a graphics context to use to draw on the buffered image
-   Graphics2D graphics2d = bufferedImage.createGraphics();
+   Graphics2D graphics2d = createGraphics();
    
    // draw the image on the buffered image starting at 0,0
    graphics2d.drawImage(image,0,0,null);
@@ -444,6 +656,17 @@ public class SimplePicture implements DigitalPicture
   * @throws IOException if the picture isn't found
   */
  public void loadOrFail(String fileName) throws IOException
+ {
+   useFileName(fileName);
+   readFile(findFile(this.fileName));
+ }
+ 
+ /**
+  * Method to set the file name and extension of the picture, and the
+  * title too if it doesn't have one yet
+  * @param fileName the file name the picture is read from
+  */
+ private void useFileName(String fileName)
  {
     // set the current picture's file name
    this.fileName = fileName;
@@ -456,24 +679,69 @@ public class SimplePicture implements DigitalPicture
    // if the current title is null use the file name
    if (title == null)
      title = fileName;
+ }
+ 
+ /**
+  * Method to read the pixels of the picture from a file
+  * @param file the file to read
+  * @throws IOException if the file can't be read
+  */
+ private void readFile(File file) throws IOException
+ {
+   // raw picture files are mapped, not decoded
+   if (RawPictureFile.isRawFileName(file.getName()))
+   {
+     bufferedImage = RawPictureFile.map(file);
+     pixels = null;
+     shared = false;
+     return;
+   }
    
-   File file = new File(this.fileName);
+   // use the decoded image from the cache if the file hasn't changed
+   PictureCache cache = PictureCache.getDefault();
+   BufferedImage image = cache.get(file);
+   boolean cached = image != null;
+   if (!cached)
+   {
+     image = ImageIO.read(file);
+     if (image == null)
+       throw new IOException(this.fileName + " isn't in a supported image format");
+     
+     // convert to a packed int image once so filters can use the pixel buffer
+     if (packedData(image) == null)
+       image = toPackedImage(image);
+     cached = cache.put(file, image);
+   }
+   bufferedImage = image;
+   pixels = packedData(image);
+   shared = cached;
+ }
+
+
+ /**
+  * Method to find the file to read for a file name, trying the media
+  * path if the name can't be read as is
+  * @param fileName the file name
+  * @return the file to read
+  * @throws IOException if the file isn't found
+  */
+ static File findFile(String fileName) throws IOException
+ {
+   File file = new File(fileName);
 
    if (!file.canRead()) 
    {
      // try adding the media path 
-     file = new File(FileChooser.getMediaPath(this.fileName));
+     file = new File(FileChooser.getMediaPath(fileName));
      if (!file.canRead())
      {
-       throw new IOException(this.fileName +
+       throw new IOException(fileName +
                              " could not be opened. Check that you specified the path");
      }
    }
-   
-   bufferedImage = ImageIO.read(file);
+   return file;
  }
 
-
  /**
   * Method to read the contents of the picture from a filename  
   * without throwing errors
@@ -490,12 +758,246 @@ public class SimplePicture implements DigitalPicture
          System.out.println("There was an error trying to open " + fileName);
          bufferedImage = new BufferedImage(600,200,
                                            BufferedImage.TYPE_INT_RGB);
+         pixels = packedData(bufferedImage);
+         shared = false;
          addMessage("Couldn't load " + fileName,5,100);
          return false;
      }
          
  }
 
+ /**
+  * Method to read a picture from a file, throwing an exception if
+  * it can't be read (new Picture(fileName) shows a message instead)
+  * @param fileName the file name to read the picture from
+  * @return the new picture
+  * @throws IOException if the file can't be read
+  */
+ public static Picture loadPicture(String fileName) throws IOException
+ {
+   return new Picture(findFile(fileName), fileName);
+ }
+
+ /**
+  * Method to read a small copy of a picture that fits in the passed
+  * size, keeping the aspect ratio (it is never made bigger).  This is
+  * much faster than reading the whole picture and scaling it: the file
+  * is decoded with source subsampling (only every nth pixel of every
+  * nth row), so a 6000 pixel wide photo is never in memory at full
+  * size.  The subsampled image is kept at least twice the thumbnail
+  * size and then shrunk in halves with bilinear filtering, which
+  * avoids the jagged look of subsampling alone.
+  * @param fileName the file name to read the picture from
+  * @param maxWidth the most columns the thumbnail can have
+  * @param maxHeight the most rows the thumbnail can have
+  * @return the thumbnail picture
+  * @throws IOException if the file can't be read
+  */
+ public static Picture loadThumbnail(String fileName, int maxWidth, int maxHeight)
+   throws IOException
+ {
+   if (maxWidth < 1 || maxHeight < 1)
+     throw new IllegalArgumentException("thumbnail size must be at least 1x1: " +
+                                        maxWidth + "x" + maxHeight);
+   File file = findFile(fileName);
+   
+   // raw and cached pictures are already in memory so just shrink them
+   BufferedImage image = null;
+   if (RawPictureFile.isRawFileName(file.getName()))
+     image = RawPictureFile.map(file);
+   else
+     image = PictureCache.getDefault().get(file);
+   if (image == null)
+     image = readSubsampled(file, fileName, maxWidth, maxHeight);
+   
+   // fit in the box without changing the aspect ratio
+   double factor = Math.min(1.0, Math.min((double) maxWidth / image.getWidth(),
+                                          (double) maxHeight / image.getHeight()));
+   int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+   int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+   
+   Picture result = new Picture(downscale(image, width, height));
+   result.setTitle(fileName);
+   return result;
+ }
+ 
+ /**
+  * Method to decode a file skipping rows and columns so the image is
+  * no more than about twice the passed size
+  * @param file the file to read
+  * @param fileName the name to use in error messages
+  * @param maxWidth the most columns wanted in the end
+  * @param maxHeight the most rows wanted in the end
+  * @return the decoded image
+  * @throws IOException if the file can't be read
+  */
+ private static BufferedImage readSubsampled(File file, String fileName,
+                                             int maxWidth, int maxHeight)
+   throws IOException
+ {
+   ImageInputStream input = ImageIO.createImageInputStream(file);
+   if (input == null)
+     throw new IOException(fileName + " could not be opened");
+   try
+   {
+     Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+     if (!readers.hasNext())
+       throw new IOException(fileName + " isn't in a supported image format");
+     ImageReader reader = readers.next();
+     try
+     {
+       reader.setInput(input, true, true);
+       int width = reader.getWidth(0);
+       int height = reader.getHeight(0);
+       
+       // keep every step'th pixel, leaving twice the thumbnail size
+       double shrink = Math.min((double) width / maxWidth, (double) height / maxHeight);
+       int step = Math.max(1, (int) (shrink / 2));
+       ImageReadParam param = reader.getDefaultReadParam();
+       param.setSourceSubsampling(step, step, 0, 0);
+       return reader.read(0, param);
+     }
+     finally
+     {
+       reader.dispose();
+     }
+   }
+   finally
+   {
+     input.close();
+   }
+ }
+ 
+ /**
+  * Method to shrink an image to the passed size with good quality.
+  * Bilinear filtering only looks at the four nearest pixels, so the
+  * image is halved until it is less than twice the size wanted and
+  * then drawn at that size.
+  * @param image the image to shrink
+  * @param width the width wanted (no more than the image's)
+  * @param height the height wanted (no more than the image's)
+  * @return a new packed int image of the passed size
+  */
+ static BufferedImage downscale(BufferedImage image, int width, int height)
+ {
+   int type = BufferedImage.TYPE_INT_RGB;
+   if (image.getColorModel().hasAlpha())
+     type = BufferedImage.TYPE_INT_ARGB;
+   
+   BufferedImage current = image;
+   do
+   {
+     int nextWidth = Math.max(width, current.getWidth() / 2);
+     int nextHeight = Math.max(height, current.getHeight() / 2);
+     if (nextWidth < 2 * width && nextHeight < 2 * height)
+     {
+       nextWidth = width;
+       nextHeight = height;
+     }
+     BufferedImage next = new BufferedImage(nextWidth, nextHeight, type);
+     Graphics2D graphics2d = next.createGraphics();
+     graphics2d.setComposite(AlphaComposite.Src);
+     graphics2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                                 RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+     graphics2d.setRenderingHint(RenderingHints.KEY_RENDERING,
+                                 RenderingHints.VALUE_RENDER_QUALITY);
+     graphics2d.drawImage(current, 0, 0, nextWidth, nextHeight, null);
+     graphics2d.dispose();
+     current = next;
+   }
+   while (current.getWidth() != width || current.getHeight() != height);
+   return current;
+ }
+ 
+ /**
+  * Method to read many pictures at the same time.  See
+  * loadAll(List, int); at most DEFAULT_MAX_CONCURRENT_LOADS are read
+  * at once.
+  * @param fileNames the file names to read the pictures from
+  * @return a future for each file name, in the same order
+  */
+ public static List<CompletableFuture<Picture>> loadAll(List<String> fileNames)
+ {
+   return loadAll(fileNames, DEFAULT_MAX_CONCURRENT_LOADS);
+ }
+
+ /**
+  * Method to read many pictures at the same time.  This returns right
+  * away with a future for each file; the future completes with the
+  * picture or with the IOException that loadPicture threw.  Waiting on
+  * slow files (like ones on a network drive) overlaps, but only
+  * maxConcurrent pictures are read at once so memory use is bounded.
+  * On Java runtimes with virtual threads each file gets a virtual
+  * thread, otherwise a pool of maxConcurrent threads is used.
+  * To use the pictures as they finish, add actions to the futures
+  * (like future.thenAccept(picture -> ...)).
+  * @param fileNames the file names to read the pictures from
+  * @param maxConcurrent the most pictures to read at the same time
+  * @return a future for each file name, in the same order
+  */
+ public static List<CompletableFuture<Picture>> loadAll(List<String> fileNames,
+                                                        int maxConcurrent)
+ {
+   if (maxConcurrent < 1)
+     throw new IllegalArgumentException("maxConcurrent must be at least 1: " + maxConcurrent);
+   Semaphore permits = new Semaphore(maxConcurrent);
+   ExecutorService executor = newLoaderExecutor(maxConcurrent);
+   List<CompletableFuture<Picture>> futures = new ArrayList<CompletableFuture<Picture>>();
+   try
+   {
+     for (String fileName : fileNames)
+     {
+       CompletableFuture<Picture> future = new CompletableFuture<Picture>();
+       futures.add(future);
+       executor.execute(() -> {
+         permits.acquireUninterruptibly();
+         try
+         {
+           future.complete(loadPicture(fileName));
+         }
+         catch (Throwable ex)
+         {
+           future.completeExceptionally(ex);
+         }
+         finally
+         {
+           permits.release();
+         }
+       });
+     }
+   }
+   finally
+   {
+     // the threads end once the files already handed out are read
+     executor.shutdown();
+   }
+   return futures;
+ }
+
+ /**
+  * Method to make the executor that loadAll reads files on: one virtual
+  * thread per file if this Java has them (Java 21 and later), otherwise
+  * a fixed pool of daemon threads
+  * @param threads the number of threads for the fixed pool
+  * @return the executor
+  */
+ private static ExecutorService newLoaderExecutor(int threads)
+ {
+   try
+   {
+     Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+     return (ExecutorService) factory.invoke(null);
+   }
+   catch (ReflectiveOperationException ex)
+   {
+     return Executors.newFixedThreadPool(threads, runnable -> {
+       Thread thread = new Thread(runnable, "picture-loader");
+       thread.setDaemon(true);
+       return thread;
+     });
+   }
+ }
+
  /**
   * Method to load the picture from the passed file name
   * this just calls load(fileName) and is for name compatibility
@@ -516,7 +1018,7 @@ public class SimplePicture implements DigitalPicture
  public void addMessage(String message, int xPos, int yPos)
  {
    // get a graphics context to use to draw on the buffered image
-   Graphics2D graphics2d = bufferedImage.createGraphics();
+   Graphics2D graphics2d = createGraphics();
    
    // set the color to white
    graphics2d.setPaint(Color.white);
@@ -645,15 +1147,45 @@ public class SimplePicture implements DigitalPicture
         " could not be opened. Check to see if you can write to the directory.");
    }
    
-   // get the extension
-   int posDot = fileName.indexOf('.');
+   // get the extension from the file's own name (directories can have dots too)
+   String name = file.getName();
+   int posDot = name.lastIndexOf('.');
    if (posDot >= 0)
-       extension = fileName.substring(posDot + 1);
+       extension = name.substring(posDot + 1);
    
    // write the contents of the buffered image to the file
-   ImageIO.write(bufferedImage, extension, file);
+   if (RawPictureFile.isRawFileName(fileName))
+     RawPictureFile.write(this, file);
+   else if (!ImageIO.write(getImageToWrite(extension), extension, file))
+     throw new IOException(fileName + " could not be written. There is no writer for " +
+                           extension + " files.");
      
  }
+ 
+ /**
+  * Method to get the image to write in a format.  Formats like jpg
+  * can't hold alpha, so for them a picture with alpha is copied
+  * without it.
+  * @param extension the extension of the format
+  * @return the image to write
+  */
+ private BufferedImage getImageToWrite(String extension)
+ {
+   BufferedImage image = bufferedImage;
+   if (!image.getColorModel().hasAlpha() ||
+       ImageIO.getImageWriters(ImageTypeSpecifier.createFromRenderedImage(image),
+                               extension).hasNext())
+     return image;
+   
+   int width = image.getWidth();
+   int height = image.getHeight();
+   BufferedImage opaque = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+   int[] opaquePixels = packedData(opaque);
+   image.getRGB(0, 0, width, height, opaquePixels, 0, width);
+   for (int i = 0; i < opaquePixels.length; i++)
+     opaquePixels[i] &= 0xffffff;
+   return opaque;
+ }
 
  /**
   * Method to write the contents of the picture to a file with 
@@ -0,0 +1,480 @@
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Vector;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Class that runs a point operation over an image file that may be
+ * too big to load into a Picture.  The source is decoded a band of
+ * rows at a time (using a source region), the operation is done on
+ * the band, and the writer pulls the changed rows as it encodes them,
+ * so only about one band of pixels is in memory at a time.
+ *
+ * Only filters that change each pixel on its own (see PixelOperation)
+ * can be streamed, and only between formats whose codecs allow it: the
+ * reader has to decode a band without decoding the rows above it (BMP
+ * and TIFF), and the writer has to ask for a few rows at a time (PNG,
+ * BMP, and TIFF).  Other readers (like PNG and JPEG) would decode the
+ * whole image again for every band, and other writers (like JPEG and
+ * GIF) ask for the whole image at once, so for those the image is
+ * decoded in one piece instead and filtered in place (see readImage),
+ * which takes about as much memory as loading it into a Picture.  The
+ * result is the same either way.
+ */
+public class StreamingFilter
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the number of pixels in a band when no band height is given */
+  public static final int DEFAULT_BAND_PIXELS = 1 << 22;
+
+  /** the formats whose readers can decode a band on its own */
+  private static final Set<String> BAND_READ_FORMATS =
+    new HashSet<String>(Arrays.asList("bmp", "tif", "tiff"));
+
+  /** the formats whose writers ask for a few rows at a time */
+  private static final Set<String> BAND_WRITE_FORMATS =
+    new HashSet<String>(Arrays.asList("png", "bmp", "tif", "tiff"));
+
+  /** the operation to do on each pixel */
+  private final PixelOperation operation;
+
+  /** the number of rows in a band (0 to use DEFAULT_BAND_PIXELS) */
+  private final int bandHeight;
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * Constructor that takes the operation to do on each pixel
+   * @param operation the operation to do on each pixel
+   */
+  public StreamingFilter(PixelOperation operation)
+  {
+    this(operation, 0);
+  }
+
+  /**
+   * Constructor that takes the operation to do on each pixel and
+   * the number of rows to decode at a time
+   * @param operation the operation to do on each pixel
+   * @param bandHeight the number of rows in a band (0 to pick one
+   * from the width of the image) when the image can be streamed
+   */
+  public StreamingFilter(PixelOperation operation, int bandHeight)
+  {
+    if (bandHeight < 0)
+      throw new IllegalArgumentException("bandHeight can't be negative: " + bandHeight);
+    this.operation = operation;
+    this.bandHeight = bandHeight;
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to get the number of rows in a band for an image
+   * @param width the width of the image
+   * @return the number of rows to decode at a time
+   */
+  public int getBandHeight(int width)
+  {
+    if (bandHeight > 0)
+      return bandHeight;
+    return Math.max(1, DEFAULT_BAND_PIXELS / Math.max(1, width));
+  }
+
+  /**
+   * Method to read an image file, do the operation on each pixel, and
+   * write the result to another file.  The files are found the same
+   * way as in SimplePicture.loadOrFail and writeOrFail and the output
+   * format comes from the extension of the output file name.
+   * @param inputName the name of the file to read
+   * @param outputName the name of the file to write
+   * @throws IOException if a file can't be read or written
+   */
+  public void process(String inputName, String outputName) throws IOException
+  {
+    File inputFile = SimplePicture.findFile(inputName);
+
+    File outputFile = new File(outputName);
+    if (outputFile.getParentFile() == null)
+      outputFile = new File(FileChooser.getMediaPath(outputName));
+    int posDot = outputName.lastIndexOf('.');
+    if (posDot < 0)
+      throw new IOException(outputName + " has no extension to pick a format from");
+    String extension = outputName.substring(posDot + 1);
+
+    ImageInputStream input = ImageIO.createImageInputStream(inputFile);
+    if (input == null)
+      throw new IOException(inputName + " could not be opened");
+    try
+    {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext())
+        throw new IOException(inputName + " isn't in a supported image format");
+      ImageReader reader = readers.next();
+      try
+      {
+        reader.setInput(input, false, true);
+        process(reader, outputFile, extension);
+      }
+      finally
+      {
+        reader.dispose();
+      }
+    }
+    finally
+    {
+      input.close();
+    }
+  }
+
+  /**
+   * Method to check if a reader can decode a band of rows without
+   * decoding the rows above it
+   * @param reader the reader to check
+   * @return true if bands can be read one at a time
+   * @throws IOException if the format can't be found
+   */
+  static boolean canReadBands(ImageReader reader) throws IOException
+  {
+    return BAND_READ_FORMATS.contains(reader.getFormatName().toLowerCase());
+  }
+
+  /**
+   * Method to check if the writer for a format asks for a few rows at a
+   * time instead of the whole image
+   * @param extension the format to write
+   * @return true if the writer can be fed one band at a time
+   */
+  static boolean canWriteBands(String extension)
+  {
+    return BAND_WRITE_FORMATS.contains(extension.toLowerCase());
+  }
+
+  /**
+   * Method to stream the first image of a reader through the
+   * operation into a file (or filter it in one piece if the reader or
+   * writer can't work a band at a time)
+   * @param reader the reader to decode bands with
+   * @param outputFile the file to write
+   * @param extension the format to write
+   * @throws IOException if the image can't be read or written
+   */
+  private void process(ImageReader reader, File outputFile, String extension)
+    throws IOException
+  {
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersBySuffix(extension);
+    if (!writers.hasNext())
+      throw new IOException("there is no image writer for " + extension + " files");
+    ImageWriter writer = writers.next();
+
+    RenderedImage image;
+    if (canReadBands(reader) && canWriteBands(extension))
+      image = new BandedImage(reader, getBandHeight(reader.getWidth(0)));
+    else
+      image = filterImage(readImage(reader, true));
+    if (outputFile.exists() && !outputFile.delete())
+      throw new IOException(outputFile + " could not be replaced");
+    ImageOutputStream output = ImageIO.createImageOutputStream(outputFile);
+    if (output == null)
+      throw new IOException(outputFile +
+                            " could not be opened. Check to see if you can write to the directory.");
+    try
+    {
+      writer.setOutput(output);
+      writer.write(null, new IIOImage(image, null, null), writer.getDefaultWriteParam());
+    }
+    catch (UncheckedIOException ex)
+    {
+      throw ex.getCause();
+    }
+    finally
+    {
+      writer.dispose();
+      output.close();
+    }
+  }
+
+  /**
+   * Method to check if the first image of a reader has alpha
+   * @param reader the reader to check
+   * @return true if the decoded pixels will have alpha values
+   * @throws IOException if the image can't be read
+   */
+  static boolean hasAlpha(ImageReader reader) throws IOException
+  {
+    ImageTypeSpecifier type = reader.getRawImageType(0);
+    if (type == null)
+      type = reader.getImageTypes(0).next();
+    return type.getColorModel().hasAlpha();
+  }
+
+  /**
+   * Method to decode the whole first image of a reader.  It is decoded
+   * into the reader's own type (like 3 bytes a pixel for JPEG), or if
+   * packed is true straight into a packed int image when the reader
+   * can do that (PNG can), so there is only ever one copy of the pixels.
+   * @param reader the reader to decode with
+   * @param packed true to decode into packed ints if the reader can
+   * @return the decoded image
+   * @throws IOException if the image can't be read
+   */
+  static BufferedImage readImage(ImageReader reader, boolean packed) throws IOException
+  {
+    if (!packed)
+      return reader.read(0);
+    int packedType = BufferedImage.TYPE_INT_RGB;
+    if (hasAlpha(reader))
+      packedType = BufferedImage.TYPE_INT_ARGB;
+    ImageReadParam param = reader.getDefaultReadParam();
+    Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+    while (types.hasNext())
+    {
+      ImageTypeSpecifier type = types.next();
+      if (type.getBufferedImageType() == packedType)
+      {
+        param.setDestinationType(type);
+        break;
+      }
+    }
+    return reader.read(0, param);
+  }
+
+  /**
+   * Method to check if any color can be stored in an image's pixels
+   * without being changed (so the image can be filtered in place)
+   * @param image the image to check
+   * @return true for packed int and 3 or 4 byte images
+   */
+  static boolean canHoldAnyColor(BufferedImage image)
+  {
+    int type = image.getType();
+    return type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB ||
+      type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR;
+  }
+
+  /**
+   * Method to do the operation on each pixel of a decoded image in
+   * place.  Gray and indexed images can't hold every color the
+   * operation may make, so they are copied into a packed int image
+   * first (which is bigger than them, not twice the picture).
+   * @param image the image to filter
+   * @return the filtered image (image itself unless it was copied)
+   */
+  private BufferedImage filterImage(BufferedImage image)
+  {
+    if (!canHoldAnyColor(image))
+      image = SimplePicture.toPackedImage(image);
+    BufferedImage target = image;
+    int width = target.getWidth();
+    boolean packed = target.getRaster().getDataBuffer() instanceof DataBufferInt;
+    FilterEngine.getDefault().forEachRowStripe(width, target.getHeight(), (startRow, endRow) -> {
+      WritableRaster raster = target.getRaster();
+      int[] row = new int[width];
+      for (int y = startRow; y < endRow; y++)
+      {
+        if (packed)
+          raster.getDataElements(0, y, width, 1, row);
+        else
+          target.getRGB(0, y, width, 1, row, 0, width);
+        for (int x = 0; x < width; x++)
+          row[x] = operation.apply(row[x], x, y);
+        if (packed)
+          raster.setDataElements(0, y, width, 1, row);
+        else
+          target.setRGB(0, y, width, 1, row, 0, width);
+      }
+    });
+    return target;
+  }
+
+  /**
+   * Method to decode a band of full rows of the first image of a
+   * reader into the top of another image
+   * @param reader the reader to decode with
+   * @param top the first row of the band
+   * @param rows the number of rows in the band
+   * @param bandImage the image to copy the rows into (replacing,
+   * not blending, its pixels)
+   * @throws IOException if the rows can't be read
+   */
+  static void readBand(ImageReader reader, int top, int rows, BufferedImage bandImage)
+    throws IOException
+  {
+    ImageReadParam param = reader.getDefaultReadParam();
+    param.setSourceRegion(new Rectangle(0, top, reader.getWidth(0), rows));
+    BufferedImage decoded = reader.read(0, param);
+    Graphics2D g2 = bandImage.createGraphics();
+    g2.setComposite(AlphaComposite.Src);
+    g2.drawImage(decoded, 0, 0, null);
+    g2.dispose();
+  }
+
+  /**
+   * Class that is an image made of bands of rows that are decoded and
+   * filtered when the writer asks for them.  The last band used is
+   * kept since writers usually ask for the rows in order.
+   */
+  private class BandedImage implements RenderedImage
+  {
+    private final ImageReader reader;
+    private final int width;
+    private final int height;
+    private final int bandHeight;
+    private final boolean hasAlpha;
+    private final ColorModel colorModel;
+    private final SampleModel sampleModel;
+    private int currentBand = -1;
+    private BufferedImage currentImage;
+
+    BandedImage(ImageReader reader, int bandHeight) throws IOException
+    {
+      this.reader = reader;
+      this.width = reader.getWidth(0);
+      this.height = reader.getHeight(0);
+      this.bandHeight = Math.min(bandHeight, height);
+
+      this.hasAlpha = hasAlpha(reader);
+
+      BufferedImage sample = newBandImage(1, 1);
+      this.colorModel = sample.getColorModel();
+      this.sampleModel = sample.getSampleModel().createCompatibleSampleModel(width,
+                                                                             this.bandHeight);
+    }
+
+    /**
+     * Method to make an empty packed int image for a band
+     */
+    private BufferedImage newBandImage(int bandWidth, int rows)
+    {
+      int imageType = BufferedImage.TYPE_INT_RGB;
+      if (hasAlpha)
+        imageType = BufferedImage.TYPE_INT_ARGB;
+      return new BufferedImage(bandWidth, rows, imageType);
+    }
+
+    /**
+     * Method to get the raster of a band, decoding and filtering it
+     * if it isn't the current band
+     */
+    private synchronized Raster getBand(int band)
+    {
+      if (band != currentBand)
+      {
+        // let the old band go before decoding the new one
+        currentImage = null;
+        currentBand = -1;
+        currentImage = decodeBand(band);
+        currentBand = band;
+      }
+      return currentImage.getRaster().createTranslatedChild(0, band * bandHeight);
+    }
+
+    /**
+     * Method to decode a band into a packed int image and do the
+     * operation on each of its pixels
+     */
+    private BufferedImage decodeBand(int band)
+    {
+      int top = band * bandHeight;
+      int rows = Math.min(bandHeight, height - top);
+
+      // every band is bandHeight rows so the tiles line up
+      BufferedImage bandImage = newBandImage(width, bandHeight);
+      try
+      {
+        readBand(reader, top, rows, bandImage);
+      }
+      catch (IOException ex)
+      {
+        throw new UncheckedIOException(ex);
+      }
+
+      int[] pixels = ((DataBufferInt) bandImage.getRaster().getDataBuffer()).getData();
+      FilterEngine.getDefault().forEachRowStripe(width, rows, (startRow, endRow) -> {
+        for (int row = startRow; row < endRow; row++)
+        {
+          int y = top + row;
+          int index = row * width;
+          for (int x = 0; x < width; x++, index++)
+            pixels[index] = operation.apply(pixels[index], x, y);
+        }
+      });
+      return bandImage;
+    }
+
+    public Vector<RenderedImage> getSources() { return null; }
+    public Object getProperty(String name) { return Image.UndefinedProperty; }
+    public String[] getPropertyNames() { return null; }
+    public ColorModel getColorModel() { return colorModel; }
+    public SampleModel getSampleModel() { return sampleModel; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getMinX() { return 0; }
+    public int getMinY() { return 0; }
+    public int getNumXTiles() { return 1; }
+    public int getNumYTiles() { return (height + bandHeight - 1) / bandHeight; }
+    public int getMinTileX() { return 0; }
+    public int getMinTileY() { return 0; }
+    public int getTileWidth() { return width; }
+    public int getTileHeight() { return bandHeight; }
+    public int getTileGridXOffset() { return 0; }
+    public int getTileGridYOffset() { return 0; }
+
+    public Raster getTile(int tileX, int tileY)
+    {
+      return getBand(tileY);
+    }
+
+    public Raster getData()
+    {
+      return getData(new Rectangle(0, 0, width, height));
+    }
+
+    public Raster getData(Rectangle rect)
+    {
+      WritableRaster raster = Raster.createWritableRaster(
+        sampleModel.createCompatibleSampleModel(rect.width, rect.height),
+        new Point(rect.x, rect.y));
+      copyData(raster);
+      return raster;
+    }
+
+    public WritableRaster copyData(WritableRaster raster)
+    {
+      if (raster == null)
+        raster = colorModel.createCompatibleWritableRaster(width, height);
+      int top = Math.max(raster.getMinY(), 0);
+      int bottom = Math.min(raster.getMinY() + raster.getHeight(), height);
+      for (int band = top / bandHeight; band * bandHeight < bottom; band++)
+        raster.setRect(getBand(band));
+      return raster;
+    }
+  }
+
+}
@@ -0,0 +1,257 @@
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class that keeps smaller copies of an image for showing it zoomed
+ * out.  Each level of the pyramid is half the width and height of the
+ * one before it (level 0 is the image itself), and a copy for a zoom
+ * factor is made from the smallest level that is still at least that
+ * big, so no copy is ever made by shrinking a huge image in one step.
+ * Levels and copies are only made when they are first asked for and
+ * are kept until clear is called.
+ *
+ * Making a copy can take a while for a big image, so getImage should
+ * be called off the event dispatch thread.  getCachedImage only
+ * returns what has already been made and is quick.  If part of the
+ * image changes, update draws just that part of the levels and copies
+ * made so far again; if all of it changes the pyramid should be
+ * cleared (or a new one made).
+ */
+public class ZoomPyramid
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the image at full size */
+  private final BufferedImage source;
+
+  /** the levels made so far, each half the size of the one before */
+  private final List<BufferedImage> levels = new ArrayList<BufferedImage>();
+
+  /** the copies made so far for zoom factors that aren't a level */
+  private final Map<Double, BufferedImage> scaled = new HashMap<Double, BufferedImage>();
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * Constructor that takes the image at full size
+   * @param source the image (which must not change while the
+   * pyramid is used)
+   */
+  public ZoomPyramid(BufferedImage source)
+  {
+    this.source = source;
+    levels.add(source);
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to get the image at full size
+   * @return the source image
+   */
+  public BufferedImage getSource() { return source; }
+
+  /**
+   * Method to get the width of the image zoomed by a factor
+   * @param factor the zoom factor
+   * @return the zoomed width
+   */
+  public int getWidth(double factor)
+  {
+    return Math.max(1, (int) (source.getWidth() * factor));
+  }
+
+  /**
+   * Method to get the height of the image zoomed by a factor
+   * @param factor the zoom factor
+   * @return the zoomed height
+   */
+  public int getHeight(double factor)
+  {
+    return Math.max(1, (int) (source.getHeight() * factor));
+  }
+
+  /**
+   * Method to get the copy of the image for a zoom factor if it has
+   * already been made.  Zooming in (factors of 1 or more) uses the
+   * source itself, drawn bigger.
+   * @param factor the zoom factor
+   * @return the image to show or null if it hasn't been made yet
+   */
+  public synchronized BufferedImage getCachedImage(double factor)
+  {
+    if (factor >= 1)
+      return source;
+    return scaled.get(factor);
+  }
+
+  /**
+   * Method to get the copy of the image for a zoom factor, making it
+   * (and any levels it needs) if it hasn't been made yet.  This can be
+   * slow so it shouldn't be called on the event dispatch thread.
+   * @param factor the zoom factor
+   * @return the image to show (the source for factors of 1 or more)
+   */
+  public BufferedImage getImage(double factor)
+  {
+    BufferedImage image = getCachedImage(factor);
+    if (image != null)
+      return image;
+
+    int width = getWidth(factor);
+    int height = getHeight(factor);
+
+    // start from the smallest level that is at least as big
+    BufferedImage level = getLevel(getLevelIndex(width, height));
+
+    if (level.getWidth() == width && level.getHeight() == height)
+      image = level;
+    else
+      image = SimplePicture.downscale(level, width, height);
+    synchronized (this)
+    {
+      scaled.put(factor, image);
+    }
+    return image;
+  }
+
+  /**
+   * Method to work out which level is the smallest one that is still
+   * at least a given size, from the sizes alone (without making any
+   * levels)
+   * @param width the width wanted
+   * @param height the height wanted
+   * @return the index of the level
+   */
+  private int getLevelIndex(int width, int height)
+  {
+    int index = 0;
+    int levelWidth = source.getWidth();
+    int levelHeight = source.getHeight();
+    while (levelWidth > 1 || levelHeight > 1)
+    {
+      int nextWidth = Math.max(1, levelWidth / 2);
+      int nextHeight = Math.max(1, levelHeight / 2);
+      if (nextWidth < width || nextHeight < height)
+        break;
+      levelWidth = nextWidth;
+      levelHeight = nextHeight;
+      index++;
+    }
+    return index;
+  }
+
+  /**
+   * Method to get a level of the pyramid, making it and the levels
+   * before it if they haven't been made yet
+   * @param index the level (0 is the source)
+   * @return the level or null if the one before is already 1x1
+   */
+  private BufferedImage getLevel(int index)
+  {
+    BufferedImage previous;
+    synchronized (this)
+    {
+      if (index < levels.size())
+        return levels.get(index);
+      previous = levels.get(levels.size() - 1);
+    }
+    while (true)
+    {
+      if (previous.getWidth() == 1 && previous.getHeight() == 1)
+        return null;
+      BufferedImage next = SimplePicture.downscale(previous,
+                                                   Math.max(1, previous.getWidth() / 2),
+                                                   Math.max(1, previous.getHeight() / 2));
+      synchronized (this)
+      {
+        // another thread may have made it while this one was working
+        if (levels.get(levels.size() - 1) == previous)
+          levels.add(next);
+        if (index < levels.size())
+          return levels.get(index);
+        previous = levels.get(levels.size() - 1);
+      }
+    }
+  }
+
+  /**
+   * Method to draw the part of every level and copy made so far that
+   * shows a changed part of the source again.  Each level is drawn
+   * from the one before it, so this costs about as much as the changed
+   * part, not the whole image.
+   * @param region the part of the source that changed
+   */
+  public synchronized void update(Rectangle region)
+  {
+    Rectangle changed = region.intersection(new Rectangle(0, 0, source.getWidth(),
+                                                          source.getHeight()));
+    if (changed.isEmpty())
+      return;
+    Rectangle[] levelRegions = new Rectangle[levels.size()];
+    levelRegions[0] = changed;
+    for (int index = 1; index < levels.size(); index++)
+      levelRegions[index] = redraw(levels.get(index - 1), levels.get(index),
+                                   levelRegions[index - 1]);
+    for (BufferedImage image : scaled.values())
+    {
+      int index = getLevelIndex(image.getWidth(), image.getHeight());
+      if (index < levels.size() && levels.get(index) != image)
+        redraw(levels.get(index), image, levelRegions[index]);
+    }
+  }
+
+  /**
+   * Method to draw the part of a smaller image that shows a changed
+   * part of a bigger one again, the same way SimplePicture.downscale
+   * draws it
+   * @param from the bigger image
+   * @param to the smaller image
+   * @param fromRegion the part of the bigger image that changed
+   * @return the part of the smaller image that was drawn
+   */
+  private static Rectangle redraw(BufferedImage from, BufferedImage to, Rectangle fromRegion)
+  {
+    double scaleX = (double) to.getWidth() / from.getWidth();
+    double scaleY = (double) to.getHeight() / from.getHeight();
+
+    // one more pixel all around since each pixel is blended with its neighbors
+    int x0 = Math.max(0, (int) Math.floor(fromRegion.x * scaleX) - 1);
+    int y0 = Math.max(0, (int) Math.floor(fromRegion.y * scaleY) - 1);
+    int x1 = Math.min(to.getWidth(),
+                      (int) Math.ceil((fromRegion.x + fromRegion.width) * scaleX) + 1);
+    int y1 = Math.min(to.getHeight(),
+                      (int) Math.ceil((fromRegion.y + fromRegion.height) * scaleY) + 1);
+    Rectangle region = new Rectangle(x0, y0, x1 - x0, y1 - y0);
+
+    Graphics2D graphics2d = to.createGraphics();
+    graphics2d.setComposite(AlphaComposite.Src);
+    graphics2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    graphics2d.setRenderingHint(RenderingHints.KEY_RENDERING,
+                                RenderingHints.VALUE_RENDER_QUALITY);
+    graphics2d.clip(region);
+    graphics2d.drawImage(from, 0, 0, to.getWidth(), to.getHeight(), null);
+    graphics2d.dispose();
+    return region;
+  }
+
+  /**
+   * Method to drop every level and copy that has been made
+   */
+  public synchronized void clear()
+  {
+    levels.clear();
+    levels.add(source);
+    scaled.clear();
+  }
+
+}